@@ -42,7 +42,7 @@ abstract class AbstractQuery<S extends Statement> implements Query {
     protected final Executor conveyor;
     protected S statement;
     protected final String query;
-    private final String sqlString;
+    private volatile String sqlString; // rendered on demand
     protected final TrySupplier<Connection, SQLException> connectionSupplier;
     protected boolean skipWarnings = true;
     protected final boolean isPrepared;
@@ -68,7 +68,6 @@ abstract class AbstractQuery<S extends Statement> implements Query {
         this.connectionSupplier = connectionSupplier;
         this.params = params;
         this.isPrepared = params != null && params.length != 0;
-        this.sqlString = asSQL(query, params);
         this.isTransactionRunning = isTransactionRunning;
         this.onCompleted = onCompleted;
     }
@@ -124,7 +123,7 @@ abstract class AbstractQuery<S extends Statement> implements Query {
 
     final <Q extends Query> Q log(Consumer<String> printer) {
         requireNonNull(printer, "Printer must be provided");
-        conveyor.execute(() -> printer.accept(sqlString));
+        conveyor.execute(() -> printer.accept(asSQL()));
         return (Q) this;
     }
 
@@ -193,14 +192,40 @@ abstract class AbstractQuery<S extends Statement> implements Query {
         }
     }
 
-    String asSQL(String query, Object... params) {
-        return Utils.asSQL(query, params);
+    StringBuilder render(StringBuilder sql, int maxLength) {
+        return Utils.asSQL(sql, query, maxLength, params);
+    }
+
+    final void resetSQL() {
+        sqlString = null; // to be rendered again
     }
 
     @Nonnull
     @Override
     public final String asSQL() {
-        return sqlString;
+        String sql = sqlString;
+        if (sql == null) {
+            sqlString = sql = render(new StringBuilder(query.length()), Integer.MAX_VALUE).toString();
+        }
+        return sql;
+    }
+
+    @Nonnull
+    @Override
+    public final String asSQL(int maxLength) {
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("Max length must not be negative");
+        }
+        String sql = sqlString;
+        if (sql != null) {
+            return sql.length() > maxLength ? sql.substring(0, maxLength) + "..." : sql;
+        }
+        StringBuilder rendered = render(new StringBuilder(Math.min(query.length(), maxLength) + 3), maxLength); // stops as soon as limit is exceeded
+        if (rendered.length() > maxLength) {
+            rendered.setLength(maxLength);
+            rendered.append("...");
+        }
+        return rendered.toString();
     }
 
     @Override
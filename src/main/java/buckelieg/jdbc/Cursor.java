@@ -0,0 +1,456 @@
+/*
+ * Copyright 2016- Anatoly Kutyakov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package buckelieg.jdbc;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A read-only typed view of the current row of a SELECT statement result
+ * <br/>The same cursor instance is passed for every row, so are the column handles obtained from it
+ * <br/>Column handles resolve their labels once per result set and then read values by index without boxing
+ * <br/>Handles are best obtained once per result set, so that rows are read without any label lookups:
+ * <pre>{@code
+ * db.select("SELECT * FROM TEST").forEachResultSet(cursor -> {
+ *     Cursor.LongColumn id = cursor.longColumn("ID");
+ *     Cursor.StringColumn name = cursor.stringColumn("NAME");
+ *     return row -> System.out.println(id.get() + ": " + name.get());
+ * })
+ * }</pre>
+ *
+ * @see Select#forEachResultSet(buckelieg.jdbc.fn.TryFunction)
+ * @see Select#forEachRow(buckelieg.jdbc.fn.TryConsumer)
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+public final class Cursor {
+
+    private final Map<String, Column> columns = new HashMap<>();
+    private ResultSet rs;
+    private int resultSetNumber;
+    private long row; // current row number to tell cached column values apart
+
+    Cursor() {
+    }
+
+    /**
+     * Positions this cursor at the current row of provided result set
+     *
+     * @return true if the cursor is moved to another result set
+     */
+    boolean bind(ResultSet rs, int resultSetNumber) {
+        row++;
+        if (this.rs == rs && this.resultSetNumber == resultSetNumber) return false;
+        this.rs = rs;
+        this.resultSetNumber = resultSetNumber;
+        this.columns.clear(); // column indices are result set specific
+        return true;
+    }
+
+    /**
+     * @return the number of the result set (starting with 1) this cursor is currently positioned at
+     */
+    public int resultSetNumber() {
+        return resultSetNumber;
+    }
+
+    /**
+     * Reports whether the last column value read had a value of SQL <code>NULL</code>
+     *
+     * @return true if the last value read was <code>NULL</code>, false - otherwise
+     * @throws SQLException if a database access error occurs
+     * @see ResultSet#wasNull()
+     */
+    public boolean wasNull() throws SQLException {
+        return rs.wasNull();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <C extends Column> C column(String label, Class<C> type) throws SQLException {
+        Column column = columns.get(requireNonNull(label, "Column label must be provided"));
+        if (column == null) {
+            int index = rs.findColumn(label);
+            if (type == LongColumn.class) column = new LongColumn(this, index);
+            else if (type == IntColumn.class) column = new IntColumn(this, index);
+            else if (type == DoubleColumn.class) column = new DoubleColumn(this, index);
+            else if (type == BooleanColumn.class) column = new BooleanColumn(this, index);
+            else if (type == StringColumn.class) column = new StringColumn(this, index);
+            else if (type == BigDecimalColumn.class) column = new BigDecimalColumn(this, index);
+            else if (type == TimestampColumn.class) column = new TimestampColumn(this, index);
+            else if (type == BytesColumn.class) column = new BytesColumn(this, index);
+            else column = new ObjectColumn(this, index);
+            columns.put(label, column);
+        } else if (column.getClass() != type) {
+            columns.remove(label); // the same label is requested with another type
+            return column(label, type);
+        }
+        return (C) column;
+    }
+
+    /**
+     * @param label column label
+     * @return a handle to read <code>long</code> values of the column
+     * @throws SQLException if there is no such column
+     * @see ResultSet#getLong(int)
+     */
+    @Nonnull
+    public LongColumn longColumn(String label) throws SQLException {
+        return column(label, LongColumn.class);
+    }
+
+    /**
+     * @param label column label
+     * @return a handle to read <code>int</code> values of the column
+     * @throws SQLException if there is no such column
+     * @see ResultSet#getInt(int)
+     */
+    @Nonnull
+    public IntColumn intColumn(String label) throws SQLException {
+        return column(label, IntColumn.class);
+    }
+
+    /**
+     * @param label column label
+     * @return a handle to read <code>double</code> values of the column
+     * @throws SQLException if there is no such column
+     * @see ResultSet#getDouble(int)
+     */
+    @Nonnull
+    public DoubleColumn doubleColumn(String label) throws SQLException {
+        return column(label, DoubleColumn.class);
+    }
+
+    /**
+     * @param label column label
+     * @return a handle to read <code>boolean</code> values of the column
+     * @throws SQLException if there is no such column
+     * @see ResultSet#getBoolean(int)
+     */
+    @Nonnull
+    public BooleanColumn booleanColumn(String label) throws SQLException {
+        return column(label, BooleanColumn.class);
+    }
+
+    /**
+     * @param label column label
+     * @return a handle to read {@link String} values of the column
+     * @throws SQLException if there is no such column
+     * @see ResultSet#getString(int)
+     */
+    @Nonnull
+    public StringColumn stringColumn(String label) throws SQLException {
+        return column(label, StringColumn.class);
+    }
+
+    /**
+     * @param label column label
+     * @return a handle to read {@link BigDecimal} values of the column
+     * @throws SQLException if there is no such column
+     * @see ResultSet#getBigDecimal(int)
+     */
+    @Nonnull
+    public BigDecimalColumn bigDecimalColumn(String label) throws SQLException {
+        return column(label, BigDecimalColumn.class);
+    }
+
+    /**
+     * @param label column label
+     * @return a handle to read {@link Timestamp} values of the column
+     * @throws SQLException if there is no such column
+     * @see ResultSet#getTimestamp(int)
+     */
+    @Nonnull
+    public TimestampColumn timestampColumn(String label) throws SQLException {
+        return column(label, TimestampColumn.class);
+    }
+
+    /**
+     * @param label column label
+     * @return a handle to read <code>byte[]</code> values of the column
+     * @throws SQLException if there is no such column
+     * @see ResultSet#getBytes(int)
+     */
+    @Nonnull
+    public BytesColumn bytesColumn(String label) throws SQLException {
+        return column(label, BytesColumn.class);
+    }
+
+    /**
+     * @param label column label
+     * @return a handle to read values of the column as they are provided by the JDBC driver
+     * @throws SQLException if there is no such column
+     * @see ResultSet#getObject(int)
+     */
+    @Nonnull
+    public ObjectColumn objectColumn(String label) throws SQLException {
+        return column(label, ObjectColumn.class);
+    }
+
+    /**
+     * Base class for column handles
+     */
+    public abstract static class Column {
+
+        final Cursor cursor;
+        final ResultSet rs;
+        final int index;
+
+        Column(Cursor cursor, int index) {
+            this.cursor = cursor;
+            this.rs = cursor.rs;
+            this.index = index;
+        }
+
+        /**
+         * @return column index in the result set (starting with 1)
+         */
+        public final int index() {
+            return index;
+        }
+
+        /**
+         * Tests if current value of this column is <code>NULL</code>
+         * <br/>The value is read with the column type getter, so that it is still readable via <code>get()</code> afterwards
+         *
+         * @return true if the value is SQL <code>NULL</code>, false - otherwise
+         * @throws SQLException if a database access error occurs
+         */
+        public final boolean isNull() throws SQLException {
+            return readNull();
+        }
+
+        abstract boolean readNull() throws SQLException;
+    }
+
+    /**
+     * Column which values are read once per row: streamed ones (e.g. <code>LONG VARCHAR</code>) can not be read twice
+     */
+    abstract static class ValueColumn<T> extends Column {
+
+        private long row = -1;
+        private T value;
+
+        ValueColumn(Cursor cursor, int index) {
+            super(cursor, index);
+        }
+
+        final T value() throws SQLException {
+            if (row != cursor.row) {
+                value = read();
+                row = cursor.row;
+            }
+            return value;
+        }
+
+        abstract T read() throws SQLException;
+
+        @Override
+        final boolean readNull() throws SQLException {
+            return value() == null;
+        }
+    }
+
+    public static final class LongColumn extends Column {
+        LongColumn(Cursor cursor, int index) {
+            super(cursor, index);
+        }
+
+        /**
+         * @return current value of the column or <code>0</code> if it is <code>NULL</code>
+         * @throws SQLException if a database access error occurs
+         */
+        public long get() throws SQLException {
+            return rs.getLong(index);
+        }
+
+        @Override
+        boolean readNull() throws SQLException {
+            rs.getLong(index);
+            return rs.wasNull();
+        }
+    }
+
+    public static final class IntColumn extends Column {
+        IntColumn(Cursor cursor, int index) {
+            super(cursor, index);
+        }
+
+        /**
+         * @return current value of the column or <code>0</code> if it is <code>NULL</code>
+         * @throws SQLException if a database access error occurs
+         */
+        public int get() throws SQLException {
+            return rs.getInt(index);
+        }
+
+        @Override
+        boolean readNull() throws SQLException {
+            rs.getInt(index);
+            return rs.wasNull();
+        }
+    }
+
+    public static final class DoubleColumn extends Column {
+        DoubleColumn(Cursor cursor, int index) {
+            super(cursor, index);
+        }
+
+        /**
+         * @return current value of the column or <code>0</code> if it is <code>NULL</code>
+         * @throws SQLException if a database access error occurs
+         */
+        public double get() throws SQLException {
+            return rs.getDouble(index);
+        }
+
+        @Override
+        boolean readNull() throws SQLException {
+            rs.getDouble(index);
+            return rs.wasNull();
+        }
+    }
+
+    public static final class BooleanColumn extends Column {
+        BooleanColumn(Cursor cursor, int index) {
+            super(cursor, index);
+        }
+
+        /**
+         * @return current value of the column or <code>false</code> if it is <code>NULL</code>
+         * @throws SQLException if a database access error occurs
+         */
+        public boolean get() throws SQLException {
+            return rs.getBoolean(index);
+        }
+
+        @Override
+        boolean readNull() throws SQLException {
+            rs.getBoolean(index);
+            return rs.wasNull();
+        }
+    }
+
+    public static final class StringColumn extends ValueColumn<String> {
+        StringColumn(Cursor cursor, int index) {
+            super(cursor, index);
+        }
+
+        /**
+         * @return current value of the column
+         * @throws SQLException if a database access error occurs
+         */
+        @Nullable
+        public String get() throws SQLException {
+            return value();
+        }
+
+        @Override
+        String read() throws SQLException {
+            return rs.getString(index);
+        }
+    }
+
+    public static final class BigDecimalColumn extends ValueColumn<BigDecimal> {
+        BigDecimalColumn(Cursor cursor, int index) {
+            super(cursor, index);
+        }
+
+        /**
+         * @return current value of the column
+         * @throws SQLException if a database access error occurs
+         */
+        @Nullable
+        public BigDecimal get() throws SQLException {
+            return value();
+        }
+
+        @Override
+        BigDecimal read() throws SQLException {
+            return rs.getBigDecimal(index);
+        }
+    }
+
+    public static final class TimestampColumn extends ValueColumn<Timestamp> {
+        TimestampColumn(Cursor cursor, int index) {
+            super(cursor, index);
+        }
+
+        /**
+         * @return current value of the column
+         * @throws SQLException if a database access error occurs
+         */
+        @Nullable
+        public Timestamp get() throws SQLException {
+            return value();
+        }
+
+        @Override
+        Timestamp read() throws SQLException {
+            return rs.getTimestamp(index);
+        }
+    }
+
+    public static final class BytesColumn extends ValueColumn<byte[]> {
+        BytesColumn(Cursor cursor, int index) {
+            super(cursor, index);
+        }
+
+        /**
+         * @return current value of the column
+         * @throws SQLException if a database access error occurs
+         */
+        @Nullable
+        public byte[] get() throws SQLException {
+            return value();
+        }
+
+        @Override
+        byte[] read() throws SQLException {
+            return rs.getBytes(index);
+        }
+    }
+
+    public static final class ObjectColumn extends ValueColumn<Object> {
+        ObjectColumn(Cursor cursor, int index) {
+            super(cursor, index);
+        }
+
+        /**
+         * @return current value of the column
+         * @throws SQLException if a database access error occurs
+         */
+        @Nullable
+        public Object get() throws SQLException {
+            return value();
+        }
+
+        @Override
+        Object read() throws SQLException {
+            return rs.getObject(index);
+        }
+    }
+
+}
@@ -24,14 +24,19 @@ import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.sql.DataSource;
-import java.io.File;
+import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Map.Entry;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -62,17 +67,19 @@ import static java.util.stream.Stream.of;
 @ParametersAreNonnullByDefault
 public final class DB implements AutoCloseable {
 
+    private static final int WARM_UP_CONNECTIONS = 4;
+
     private final Lock lock = new ReentrantLock();
     private final Condition condition = lock.newCondition();
 
     private Connection connection;
     private final TrySupplier<Connection, SQLException> connectionSupplier;
-    private ExecutorService conveyor;
-    private boolean shutdownConveyor = true;
     private Boolean canCreateNewConnection = null;
-    private final ConcurrentMap<String, RSMeta.Column> metaCache;
+    private final MetaCache metaCache;
+    private final Tasks tasks; // asynchronous tasks of this DB (and its transactions) to wait for on close
     private TryConsumer<Connection, SQLException> onCommit;
     private boolean isTransactionRunning = false;
+    private List<EventPipeline<?>> transactionEvents; // mutation events are delivered once the transaction is committed
 
     DB(Connection connection) {
         this(() -> connection);
@@ -80,8 +87,8 @@ public final class DB implements AutoCloseable {
     }
 
     private DB(
-            ExecutorService conveyor,
-            ConcurrentMap<String, RSMeta.Column> metaCache,
+            MetaCache metaCache,
+            Tasks tasks,
             Connection connection,
             TrySupplier<Connection, SQLException> connectionSupplier,
             boolean isTransactionRunning,
@@ -90,9 +97,8 @@ public final class DB implements AutoCloseable {
     ) {
         this.connection = connection;
         this.connectionSupplier = connectionSupplier;
-        this.conveyor = conveyor;
         this.metaCache = metaCache;
-        this.shutdownConveyor = false;
+        this.tasks = tasks;
         this.canCreateNewConnection = canCreate;
         this.isTransactionRunning = isTransactionRunning;
         this.onCommit = onCommit;
@@ -108,8 +114,8 @@ public final class DB implements AutoCloseable {
     public DB(TrySupplier<Connection, SQLException> connectionSupplier) {
         requireNonNull(connectionSupplier, "Connection supplier must be provided");
         this.connectionSupplier = connectionSupplier;
-        this.conveyor = getConveyor();
-        this.metaCache = new ConcurrentHashMap<>();
+        this.metaCache = MetaCache.shared();
+        this.tasks = new Tasks();
     }
 
     /**
@@ -125,7 +131,7 @@ public final class DB implements AutoCloseable {
     }
 
     /**
-     * Closes underlying connection
+     * Closes underlying connection and waits (up to a minute) for the asynchronous tasks of this DB (event handlers, printers etc.) to complete
      *
      * @throws SQLRuntimeException if something went wrong
      */
@@ -138,13 +144,129 @@ public final class DB implements AutoCloseable {
                         connection = null;
                     }
                 },
-                () -> {
-                    if (conveyor != null && shutdownConveyor) {
-                        conveyor.shutdown();
-                        conveyor.awaitTermination(1, TimeUnit.MINUTES);
+                () -> tasks.await(1, TimeUnit.MINUTES)
+        );
+    }
+
+    /**
+     * Configures table metadata cache of this DB
+     * <br/>Metadata (primary and foreign keys etc.) is cached per table and is shared by all the DB instances connected to the same database (URL, catalog and schema),
+     * so are these settings.
+     * Tables which are created, altered or dropped via {@link #query(String, Object...)} or {@link #script(String, Map)} are invalidated automatically
+     *
+     * @param ttl        time to live of a table metadata (zero means no expiration)
+     * @param unit       time to live unit
+     * @param maxEntries maximum number of tables to keep metadata of
+     * @return this DB instance
+     * @throws IllegalArgumentException if <code>maxEntries</code> is not positive
+     */
+    @Nonnull
+    public DB metaCache(long ttl, TimeUnit unit, int maxEntries) {
+        metaCache.configure(ttl, unit, maxEntries);
+        return this;
+    }
+
+    /**
+     * Loads metadata of provided tables into the metadata cache ahead of the first queries
+     * <br/>Tables are loaded concurrently over several connections if connection supplier provides new ones, otherwise - over the connection of this DB
+     * <br/>Unquoted table names are resolved as the database does. Tables without schema are looked up in the current schema
+     *
+     * @param tables table names optionally prefixed with schema name
+     * @return this DB instance
+     * @throws SQLRuntimeException if metadata could not be loaded
+     */
+    @Nonnull
+    public DB warmUp(String... tables) {
+        Queue<String> names = new ConcurrentLinkedQueue<>(asList(requireNonNull(tables, "Tables must be provided")));
+        if (names.isEmpty()) {
+            return this;
+        }
+        List<Connection> connections = new ArrayList<>();
+        Connection main = null;
+        try {
+            main = getConnectionSupplier(false).get();
+            if (canCreateNewConnection != Boolean.FALSE) {
+                for (int i = 0; i < Math.min(names.size(), WARM_UP_CONNECTIONS); i++) {
+                    Connection conn = connectionSupplier.get();
+                    if (conn == main || connections.contains(conn)) {
+                        break; // connections are not distinct - they must not be used concurrently
                     }
+                    connections.add(conn);
                 }
-        );
+            }
+            if (connections.isEmpty()) {
+                connections.add(main); // a single loader then
+            }
+            List<CompletableFuture<Void>> loaders = new ArrayList<>();
+            for (Connection conn : connections) {
+                loaders.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        for (String name = names.poll(); name != null; name = names.poll()) {
+                            for (MetaCache.Table table : MetaCache.resolve(conn, name)) {
+                                metaCache.get(conn.getMetaData(), table);
+                            }
+                        }
+                    } catch (SQLException e) {
+                        throw newSQLRuntimeException(e);
+                    }
+                }, tasks));
+            }
+            CompletableFuture.allOf(loaders.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof SQLRuntimeException ? (SQLRuntimeException) e.getCause() : newSQLRuntimeException(e.getCause());
+        } catch (SQLException e) {
+            throw newSQLRuntimeException(e);
+        } finally {
+            for (Connection conn : connections) {
+                if (conn != main) {
+                    try {
+                        conn.close();
+                    } catch (SQLException e) {
+                        // ignore
+                    }
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Saves content of the metadata cache to provided file along with a fingerprint of the current database schema
+     *
+     * @param snapshot a file to save metadata to
+     * @return this DB instance
+     * @throws SQLRuntimeException if something went wrong
+     * @see #loadMetadata(Path)
+     */
+    @Nonnull
+    public DB saveMetadata(Path snapshot) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(requireNonNull(snapshot, "Snapshot file must be provided"))))) {
+            metaCache.write(getConnectionSupplier(false).get().getMetaData(), out);
+        } catch (Exception e) {
+            throw newSQLRuntimeException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Loads metadata cache content previously saved with {@link #saveMetadata(Path)}
+     * <br/>Snapshot is ignored if database schema fingerprint (database product and version, URL, user and the list of tables of the schemas snapshot tables belong to) has changed since it was taken
+     *
+     * @param snapshot a file to load metadata from
+     * @return true if snapshot was loaded, false - if it is missing or outdated
+     * @throws SQLRuntimeException if snapshot could not be read
+     */
+    public boolean loadMetadata(Path snapshot) {
+        if (!Files.isRegularFile(requireNonNull(snapshot, "Snapshot file must be provided"))) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            return metaCache.read(getConnectionSupplier(false).get().getMetaData(), in);
+        } catch (EOFException e) {
+            return false; // truncated snapshot
+        } catch (Exception e) {
+            throw newSQLRuntimeException(e);
+        }
     }
 
     /**
@@ -192,7 +314,7 @@ public final class DB implements AutoCloseable {
     @SuppressWarnings({"unchecked", "rawtypes"})
     @Nonnull
     public final Script script(String script, Map<String, ?> namedParameters) {
-        return new ScriptQuery(lock, condition, getConveyor(), metaCache, getConnectionSupplier(false), cutComments(requireNonNull(script, "SQL script must be provided")), namedParameters.entrySet());
+        return new ScriptQuery(lock, condition, tasks, metaCache, getConnectionSupplier(false), cutComments(requireNonNull(script, "SQL script must be provided")), namedParameters.entrySet());
     }
 
     /**
@@ -208,7 +330,7 @@ public final class DB implements AutoCloseable {
     @SafeVarargs
     @Nonnull
     public final <T extends Entry<String, ?>> Script script(String script, T... namedParameters) {
-        return new ScriptQuery(lock, condition, getConveyor(), metaCache, getConnectionSupplier(false), cutComments(requireNonNull(script, "SQL script must be provided")), asList(namedParameters));
+        return new ScriptQuery(lock, condition, tasks, metaCache, getConnectionSupplier(false), cutComments(requireNonNull(script, "SQL script must be provided")), asList(namedParameters));
     }
 
     /**
@@ -313,7 +435,7 @@ public final class DB implements AutoCloseable {
             }
         }
 //        String finalQuery = query;
-        return new StoredProcedureQuery(lock, condition, isTransactionRunning, getConveyor(), metaCache, getConnectionSupplier(false), () -> {
+        return new StoredProcedureQuery(lock, condition, isTransactionRunning, tasks, metaCache, getConnectionSupplier(false), () -> {
             if (!isTransactionRunning) {
                 connection.setAutoCommit(true);
             }
@@ -349,12 +471,14 @@ public final class DB implements AutoCloseable {
         if (isProcedure(query)) {
             throw new IllegalArgumentException(format("Query '%s' is not valid select statement", query));
         }
-        return new SelectQuery(lock, condition, isTransactionRunning, getConveyor(), metaCache, getConnectionSupplier(false), () -> {
+        SelectQuery select = new SelectQuery(lock, condition, isTransactionRunning, tasks, metaCache, getConnectionSupplier(false), () -> {
             if (!isTransactionRunning) {
                 connection.setAutoCommit(true);
             }
 //            System.out.printf("onCompleted DB.select: %s%n", query);
         }, checkAnonymous(checkSingle(query)), parameters);
+        select.transactionEvents = transactionEvents;
+        return select;
     }
 
 
@@ -373,7 +497,7 @@ public final class DB implements AutoCloseable {
         if (isProcedure(query)) {
             throw new IllegalArgumentException(format("Query '%s' is not valid DML statement", query));
         }
-        return new UpdateQuery(lock, condition, isTransactionRunning, getConveyor(), getConnectionSupplier(false), checkAnonymous(checkSingle(query)), batch);
+        return new UpdateQuery(lock, condition, isTransactionRunning, tasks, getConnectionSupplier(false), checkAnonymous(checkSingle(query)), batch);
     }
 
     /**
@@ -390,7 +514,7 @@ public final class DB implements AutoCloseable {
         if (isProcedure(query)) {
             throw new IllegalArgumentException(format("Query '%s' is not valid SQL statement", query));
         }
-        return new QueryImpl(lock, condition, getConveyor(), getConnectionSupplier(false), checkAnonymous(checkSingle(query)), parameters);
+        return new QueryImpl(lock, condition, tasks, metaCache, getConnectionSupplier(false), checkAnonymous(checkSingle(query)), parameters);
     }
 
     /**
@@ -478,14 +602,22 @@ public final class DB implements AutoCloseable {
      * @param query INSERT/UPDATE/DELETE query to execute
      * @param batch an array of query named parameters in the form of :name
      * @return update query
-     * @throws IllegalArgumentException if provided query is a procedure call statement
+     * @throws IllegalArgumentException if provided query is a procedure call statement, batch is empty or its rows differ in parameters or <code>IN</code> lists sizes
      * @see Update
      */
     @SafeVarargs
     @Nonnull
     public final Update update(String query, Map<String, ?>... batch) {
-        List<Entry<String, Object[]>> params = of(batch).map(np -> prepareQuery(query, np.entrySet())).collect(toList());
-        return update(params.get(0).getKey(), params.stream().map(Entry::getValue).collect(toList()).toArray(new Object[params.size()][]));
+        requireNonNull(query, "SQL query must be provided");
+        if (requireNonNull(batch, "Batch must be provided").length == 0) {
+            throw new IllegalArgumentException("Batch must not be empty");
+        }
+        QueryTemplate template = QueryTemplate.compile(query, requireNonNull(batch[0], "Named parameters must be provided")); // the first row defines IN lists sizes
+        Object[][] params = new Object[batch.length][];
+        for (int i = 0; i < batch.length; i++) {
+            params[i] = template.values(requireNonNull(batch[i], "Named parameters must be provided"));
+        }
+        return update(template.query(), params);
     }
 
     /**
@@ -584,16 +716,32 @@ public final class DB implements AutoCloseable {
 
     @Nullable
     private <T> T doInTransaction(boolean createNew, @Nullable TransactionIsolation level, TryFunction<DB, T, SQLException> action) {
+        List<EventPipeline<?>> events = new ArrayList<>();
+        boolean committed = false;
         try {
-            return Utils.doInTransaction(
+            T result = Utils.doInTransaction(
                     createNew && connection != null, getConnectionSupplier(createNew), level,
-                    conn -> requireNonNull(action, "Action must be provided").apply(new DB(
-                            getConveyor(), metaCache, conn, connectionSupplier, true, canCreateNewConnection,
-                            onCommit == null ? Connection::commit : c -> onCommit.compose(Connection::commit).accept(c)
-                    ))
+                    conn -> {
+                        DB db = new DB(
+                                metaCache, tasks, conn, connectionSupplier, true, canCreateNewConnection,
+                                onCommit == null ? Connection::commit : c -> onCommit.compose(Connection::commit).accept(c)
+                        );
+                        db.transactionEvents = events;
+                        return requireNonNull(action, "Action must be provided").apply(db);
+                    }
             );
+            committed = true;
+            return result;
         } catch (SQLException e) {
             throw newSQLRuntimeException(e);
+        } finally {
+            for (EventPipeline<?> pipeline : events) {
+                if (committed) {
+                    pipeline.commit();
+                } else {
+                    pipeline.rollback();
+                }
+            }
         }
     }
 
@@ -656,15 +804,63 @@ public final class DB implements AutoCloseable {
         };
     }
 
-    private ExecutorService getConveyor() {
-        if (conveyor == null || conveyor.isShutdown() || conveyor.isTerminated()) {
+    /**
+     * Executor for asynchronous tasks (event handlers, printers, timed out scripts) shared by all the DB instances
+     * <br/>It is created on first use and its daemon threads go away as soon as they are idle for a while, so it never needs to be shut down
+     */
+    private static final class Conveyor {
+
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@Nonnull Runnable task) {
+                Thread thread = new Thread(task, "jdbc-fn-conveyor-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Submits asynchronous tasks of a DB instance to the shared {@link Conveyor} keeping track of those which are not completed yet
+     */
+    @ThreadSafe
+    private static final class Tasks implements Executor {
+
+        private int pending; // guarded by this
+
+        @Override
+        public void execute(@Nonnull Runnable task) {
             synchronized (this) {
-                if (conveyor == null || conveyor.isShutdown() || conveyor.isTerminated()) {
-                    conveyor = Executors.newWorkStealingPool();
-                }
+                pending++;
+            }
+            try {
+                Conveyor.INSTANCE.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        completed();
+                    }
+                });
+            } catch (RuntimeException e) {
+                completed();
+                throw e;
+            }
+        }
+
+        private synchronized void completed() {
+            if (--pending == 0) {
+                notifyAll();
+            }
+        }
+
+        synchronized void await(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (long left = unit.toNanos(timeout); pending > 0 && left > 0; left = deadline - System.nanoTime()) {
+                TimeUnit.NANOSECONDS.timedWait(this, left);
             }
         }
-        return conveyor;
     }
 
 }
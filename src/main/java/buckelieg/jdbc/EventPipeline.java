@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016- Anatoly Kutyakov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package buckelieg.jdbc;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static buckelieg.jdbc.Utils.newSQLRuntimeException;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Ordered delivery of mutation events to a handler in batches
+ * <br/>Events are published by a single producer (a query) and delivered by a single drain task at a time, so handler observes them in the order of publishing
+ * <br/>Queue of the batches awaiting delivery is bounded: producer blocks as soon as the handler falls behind
+ * <br/><i>Held</i> pipeline accumulates events until {@link #commit()} so that the handler never sees the changes which are rolled back afterwards
+ *
+ * @param <E> event type
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+final class EventPipeline<E> {
+
+    static final int DEFAULT_CAPACITY = 16; // batches
+
+    private final Executor executor;
+    private final int batchSize;
+    private final boolean held;
+    private final Consumer<List<E>> handler;
+    private final BlockingQueue<List<E>> queue;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private List<E> pending; // producer side only
+
+    EventPipeline(Executor executor, int batchSize, int capacity, boolean held, Consumer<List<E>> handler) {
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.held = held;
+        this.handler = handler;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.pending = new ArrayList<>(held ? 16 : batchSize);
+    }
+
+    /**
+     * @param event an event to deliver
+     */
+    void publish(E event) {
+        pending.add(event);
+        if (!held && pending.size() >= batchSize) {
+            handOff();
+        }
+    }
+
+    /**
+     * Releases all the events published so far to the handler
+     */
+    void commit() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<E> events = pending;
+        pending = new ArrayList<>();
+        for (int from = 0; from < events.size(); from += batchSize) {
+            enqueue(unmodifiableList(new ArrayList<>(events.subList(from, Math.min(from + batchSize, events.size())))));
+        }
+    }
+
+    /**
+     * Discards all the events published since the last commit
+     */
+    void rollback() {
+        pending.clear();
+    }
+
+    private void handOff() {
+        List<E> batch = unmodifiableList(pending);
+        pending = new ArrayList<>(batchSize);
+        enqueue(batch);
+    }
+
+    private void enqueue(List<E> batch) {
+        try {
+            if (!queue.offer(batch)) {
+                schedule();
+                queue.put(batch); // backpressure: wait for the handler to catch up
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw newSQLRuntimeException(e);
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            List<E> batch;
+            while ((batch = queue.poll()) != null) {
+                handler.accept(batch);
+            }
+        } finally {
+            draining.set(false);
+            if (!queue.isEmpty()) {
+                schedule(); // either handler has failed or the batch was enqueued concurrently
+            }
+        }
+    }
+
+}
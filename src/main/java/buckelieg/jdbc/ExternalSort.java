@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016- Anatoly Kutyakov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package buckelieg.jdbc;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static buckelieg.jdbc.Utils.newSQLRuntimeException;
+
+/**
+ * External merge sort of default-mapped rows
+ * <br/>Input is cut into runs which fit into memory budget, each run is sorted on the heap and spilled into its own {@link SpillFile}
+ * <br/>As soon as there are too many spilled runs of the same merge level they are merged into a single run of the next level
+ * and released, so that the number of open files and the disk space used stay bounded whatever the row count is
+ * <br/>Remaining runs are then merged with a k-way merge
+ */
+@ParametersAreNonnullByDefault
+final class ExternalSort {
+
+    private static final int MAX_FAN_IN = 64;
+    private static final int MIN_RUN_ROWS = 1024; // even zero budget must not produce a file per row
+
+    private final Comparator<? super Map<String, Object>> comparator;
+    private final long memoryBudget;
+    private final int minRunRows;
+    private final int fanIn;
+    private final List<SpillFile> files = new ArrayList<>(); // all open files
+    private final List<List<Iterable<Map<String, Object>>>> levels = new ArrayList<>(); // spilled runs by merge level
+
+    private ExternalSort(Comparator<? super Map<String, Object>> comparator, long memoryBudget, int minRunRows, int fanIn) {
+        this.comparator = comparator;
+        this.memoryBudget = memoryBudget;
+        this.minRunRows = minRunRows;
+        this.fanIn = fanIn;
+    }
+
+    /**
+     * Sorts provided rows lazily: the input is consumed as soon as terminal operation on the resulting stream is invoked
+     * <br/>The sort is stable. Closing the resulting stream releases all temporary files
+     *
+     * @param rows         rows to sort
+     * @param comparator   rows comparator
+     * @param memoryBudget maximum number of bytes sorted runs may occupy on the heap
+     * @return a {@link Stream} of sorted rows
+     */
+    static Stream<Map<String, Object>> sort(Stream<Map<String, Object>> rows, Comparator<? super Map<String, Object>> comparator, long memoryBudget) {
+        return sort(rows, comparator, memoryBudget, MIN_RUN_ROWS, MAX_FAN_IN);
+    }
+
+    static Stream<Map<String, Object>> sort(Stream<Map<String, Object>> rows, Comparator<? super Map<String, Object>> comparator, long memoryBudget, int minRunRows, int fanIn) {
+        ExternalSort sort = new ExternalSort(comparator, memoryBudget, minRunRows, fanIn);
+        Supplier<Spliterator<Map<String, Object>>> sorted = () -> Spliterators.spliteratorUnknownSize(sort.sort(rows), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(sorted, Spliterator.ORDERED | Spliterator.NONNULL, false).onClose(rows::close).onClose(sort::close);
+    }
+
+    private Iterator<Map<String, Object>> sort(Stream<Map<String, Object>> rows) {
+        List<Map<String, Object>> run = new ArrayList<>();
+        long used = 0;
+        try (Stream<Map<String, Object>> stream = rows) {
+            Iterator<Map<String, Object>> it = stream.iterator();
+            while (it.hasNext()) {
+                Map<String, Object> row = it.next();
+                used += RowCodec.sizeOf(row);
+                run.add(row);
+                if (used > memoryBudget && run.size() >= minRunRows) {
+                    run.sort(comparator);
+                    add(spill(run.iterator()), 0);
+                    run = new ArrayList<>();
+                    used = 0;
+                }
+            }
+            run.sort(comparator);
+            if (levels.isEmpty()) {
+                return run.iterator();
+            }
+            List<Iterable<Map<String, Object>>> runs = new ArrayList<>();
+            for (int level = levels.size() - 1; level >= 0; level--) {
+                runs.addAll(levels.get(level)); // higher levels hold earlier rows
+            }
+            if (!run.isEmpty()) {
+                runs.add(run); // the last run fits into memory budget - no need to spill it
+            }
+            while (runs.size() > fanIn) { // merge the earliest runs first to keep the sort stable
+                List<Iterable<Map<String, Object>>> pass = new ArrayList<>(runs.subList(0, fanIn));
+                SpillFile merged = spill(merge(pass));
+                release(pass);
+                runs.subList(0, fanIn).clear();
+                runs.add(0, merged);
+            }
+            return merge(runs);
+        } catch (Exception e) {
+            close();
+            throw newSQLRuntimeException(e);
+        }
+    }
+
+    private void add(SpillFile run, int level) throws Exception {
+        while (levels.size() <= level) {
+            levels.add(new ArrayList<>());
+        }
+        List<Iterable<Map<String, Object>>> runs = levels.get(level);
+        runs.add(run);
+        if (runs.size() >= fanIn) { // lower levels are always empty here, so the merged run is the latest one of the next level
+            SpillFile merged = spill(merge(runs));
+            release(runs);
+            runs.clear();
+            add(merged, level + 1);
+        }
+    }
+
+    private SpillFile spill(Iterator<Map<String, Object>> rows) throws Exception {
+        SpillFile file = new SpillFile();
+        files.add(file);
+        while (rows.hasNext()) {
+            file.write(rows.next());
+        }
+        file.flush();
+        return file;
+    }
+
+    private void release(List<Iterable<Map<String, Object>>> runs) {
+        for (Iterable<Map<String, Object>> run : runs) {
+            if (run instanceof SpillFile) {
+                files.remove(run);
+                ((SpillFile) run).close();
+            }
+        }
+    }
+
+    private Iterator<Map<String, Object>> merge(List<Iterable<Map<String, Object>>> runs) {
+        PriorityQueue<Head> heads = new PriorityQueue<>(runs.size());
+        for (int i = 0; i < runs.size(); i++) {
+            Iterator<Map<String, Object>> it = runs.get(i).iterator();
+            if (it.hasNext()) {
+                heads.add(new Head(i, it.next(), it));
+            }
+        }
+        return new Iterator<Map<String, Object>>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                Head head = heads.poll();
+                if (head == null) {
+                    throw new NoSuchElementException();
+                }
+                Map<String, Object> row = head.row;
+                if (head.rows.hasNext()) {
+                    head.row = head.rows.next();
+                    heads.add(head);
+                }
+                return row;
+            }
+        };
+    }
+
+    private void close() {
+        for (SpillFile file : files) {
+            file.close();
+        }
+        files.clear();
+    }
+
+    private final class Head implements Comparable<Head> {
+
+        private final int run;
+        private final Iterator<Map<String, Object>> rows;
+        private Map<String, Object> row;
+
+        private Head(int run, Map<String, Object> row, Iterator<Map<String, Object>> rows) {
+            this.run = run;
+            this.row = row;
+            this.rows = rows;
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            int result = comparator.compare(row, other.row);
+            return result != 0 ? result : Integer.compare(run, other.run); // earlier runs first keeps the sort stable
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016- Anatoly Kutyakov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package buckelieg.jdbc;
+
+import buckelieg.jdbc.fn.TryBiFunction;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+import static buckelieg.jdbc.Utils.newSQLRuntimeException;
+
+/**
+ * A read-only row which column values are read from the cursor on first access
+ * <br/>Row stays <i>live</i> while the cursor is positioned on it.
+ * As soon as the cursor moves forward the row is <i>sealed</i>: it retains only those columns which were accessed before
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+final class LazyRow extends AbstractMap<String, Object> {
+
+    private static final Object UNREAD = new Object();
+
+    /**
+     * Shared state of all the rows of a single result set
+     */
+    static final class Source {
+
+        private final ResultSet rs;
+        private final String[] labels;
+        private final int[] indices;
+        private final List<TryBiFunction<ResultSet, Integer, Object, SQLException>> readers;
+        private final Map<String, Integer> positions;
+        private long generation;
+
+        Source(ResultSet rs, String[] labels, int[] indices, List<TryBiFunction<ResultSet, Integer, Object, SQLException>> readers) {
+            this.rs = rs;
+            this.labels = labels;
+            this.indices = indices;
+            this.readers = readers;
+            this.positions = new HashMap<>(labels.length * 4 / 3 + 1);
+            for (int i = 0; i < labels.length; i++) {
+                positions.put(labels[i], i); // the last one of duplicate labels wins as in the eager mapper
+            }
+        }
+
+        LazyRow next() {
+            return new LazyRow(this, ++generation);
+        }
+    }
+
+    private final Source source;
+    private final long generation;
+    private final Object[] values;
+
+    private LazyRow(Source source, long generation) {
+        this.source = source;
+        this.generation = generation;
+        this.values = new Object[source.labels.length];
+        Arrays.fill(values, UNREAD);
+    }
+
+    private boolean isLive() {
+        try {
+            return generation == source.generation && !source.rs.isClosed();
+        } catch (SQLException e) {
+            throw newSQLRuntimeException(e);
+        }
+    }
+
+    private Object value(int position) {
+        Object value = values[position];
+        if (value == UNREAD && isLive()) {
+            try {
+                value = values[position] = source.readers.get(position).apply(source.rs, source.indices[position]);
+            } catch (SQLException e) {
+                throw newSQLRuntimeException(e);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public Object get(@Nullable Object key) {
+        Integer position = source.positions.get(key);
+        if (position == null) return null;
+        Object value = value(position);
+        return value == UNREAD ? null : value;
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key) {
+        Integer position = source.positions.get(key);
+        return position != null && value(position) != UNREAD;
+    }
+
+    /**
+     * Iterating over a live row reads all of its columns
+     */
+    @Nonnull
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Nonnull
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                List<Entry<String, Object>> entries = new ArrayList<>(values.length);
+                for (int i = 0; i < values.length; i++) {
+                    if (i == source.positions.get(source.labels[i])) {
+                        Object value = value(i);
+                        if (value != UNREAD) {
+                            entries.add(new SimpleImmutableEntry<>(source.labels[i], value));
+                        }
+                    }
+                }
+                return entries.iterator();
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for (Iterator<Entry<String, Object>> it = iterator(); it.hasNext(); it.next()) size++;
+                return size;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,627 @@
+/*
+ * Copyright 2016- Anatoly Kutyakov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package buckelieg.jdbc;
+
+import buckelieg.jdbc.fn.TryBiFunction;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+import static buckelieg.jdbc.Utils.EXCEPTION_MESSAGE;
+import static java.lang.Math.min;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Large objects (LOB) reading helpers
+ * <br/>Small values are kept on the heap while large ones are spilled into a temporary file which is memory-mapped for reading
+ */
+final class Lobs {
+
+    static final int BUFFER_SIZE = 8192;
+
+    private Lobs() {
+        throw new UnsupportedOperationException();
+    }
+
+    static byte[] readBytes(InputStream input) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length;
+        while ((length = input.read(buffer)) != -1) {
+            bos.write(buffer, 0, length);
+        }
+        return bos.toByteArray();
+    }
+
+    static String readString(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder(BUFFER_SIZE);
+        char[] buffer = new char[BUFFER_SIZE];
+        int length;
+        while ((length = reader.read(buffer)) != -1) {
+            sb.append(buffer, 0, length);
+        }
+        return sb.toString();
+    }
+
+    static TryBiFunction<ResultSet, Integer, Object, SQLException> binaryReader(long spillThreshold) {
+        return (rs, index) -> {
+            try (InputStream is = rs.getBinaryStream(index)) {
+                return is == null ? null : toBlob(is, spillThreshold);
+            } catch (IOException e) {
+                throw new SQLException(e);
+            }
+        };
+    }
+
+    static TryBiFunction<ResultSet, Integer, Object, SQLException> characterReader(long spillThreshold) {
+        return (rs, index) -> {
+            try (Reader r = rs.getCharacterStream(index)) {
+                return r == null ? null : toClob(r, spillThreshold);
+            } catch (IOException e) {
+                throw new SQLException(e);
+            }
+        };
+    }
+
+    static Blob toBlob(InputStream input, long spillThreshold) throws IOException, SQLException {
+        byte[] buffer = new byte[spillThreshold >= BUFFER_SIZE ? BUFFER_SIZE : (int) spillThreshold + 1];
+        ByteArrayOutputStream head = new ByteArrayOutputStream(buffer.length);
+        int length;
+        while ((length = input.read(buffer)) != -1) {
+            head.write(buffer, 0, length);
+            if (head.size() > spillThreshold) {
+                return new BufferBlob(spill(head.toByteArray(), input));
+            }
+        }
+        return new BufferBlob(ByteBuffer.wrap(head.toByteArray()));
+    }
+
+    static Clob toClob(Reader reader, long spillThreshold) throws IOException, SQLException {
+        char[] buffer = new char[spillThreshold >= BUFFER_SIZE ? BUFFER_SIZE : (int) spillThreshold + 1];
+        StringBuilder head = new StringBuilder(buffer.length);
+        int length;
+        while ((length = reader.read(buffer)) != -1) {
+            head.append(buffer, 0, length);
+            if (head.length() > spillThreshold) {
+                return new BufferClob(spill(head, reader));
+            }
+        }
+        return new BufferClob(CharBuffer.wrap(head.toString()));
+    }
+
+    private static ByteBuffer spill(byte[] head, InputStream tail) throws IOException, SQLException {
+        try (FileChannel channel = newSpillChannel()) {
+            channel.write(ByteBuffer.wrap(head));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            int length;
+            while ((length = tail.read(buffer)) != -1) {
+                wrapped.clear().limit(length);
+                while (wrapped.hasRemaining()) {
+                    channel.write(wrapped);
+                }
+            }
+            return map(channel);
+        }
+    }
+
+    private static CharBuffer spill(CharSequence head, Reader tail) throws IOException, SQLException {
+        try (FileChannel channel = newSpillChannel()) {
+            ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE * 2);
+            CharBuffer chars = bytes.asCharBuffer();
+            for (int i = 0; i < head.length(); i += BUFFER_SIZE) {
+                int end = min(head.length(), i + BUFFER_SIZE);
+                chars.clear();
+                chars.append(head, i, end);
+                write(channel, bytes, chars.position());
+            }
+            char[] buffer = new char[BUFFER_SIZE];
+            int length;
+            while ((length = tail.read(buffer)) != -1) {
+                chars.clear();
+                chars.put(buffer, 0, length);
+                write(channel, bytes, length);
+            }
+            return map(channel).asCharBuffer();
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer bytes, int chars) throws IOException {
+        bytes.clear().limit(chars * 2);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    static FileChannel newSpillChannel() throws IOException {
+        Path file = Files.createTempFile("jdbc-fn-", ".spill");
+        try {
+            return FileChannel.open(file, READ, WRITE, DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    // mapping outlives the channel, so the file is gone from the file system as soon as the channel is closed
+    private static ByteBuffer map(FileChannel channel) throws IOException, SQLException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new SQLException(format("Large object of %s bytes exceeds maximum mappable size", size));
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    static InputStream lazyInputStream(Path file, long length) {
+        return new LazyInputStream(file, length);
+    }
+
+    static Reader lazyReader(Path file, Charset charset) {
+        return new LazyReader(file, charset);
+    }
+
+    /**
+     * Makes a lazy file stream (reader) read its file anew from the start
+     *
+     * @param value a parameter value
+     * @throws IOException if file can not be closed
+     */
+    static void rewind(@Nullable Object value) throws IOException {
+        if (value instanceof LazyInputStream) {
+            ((LazyInputStream) value).rewind();
+        } else if (value instanceof LazyReader) {
+            ((LazyReader) value).rewind();
+        }
+    }
+
+    static InputStream channelInputStream(FileChannel channel) {
+        return new FilterInputStream(Channels.newInputStream(channel)) {
+            @Override
+            public void close() {
+                // channel is owned by the caller
+            }
+        };
+    }
+
+    private static void checkPosition(long pos, long length) throws SQLException {
+        if (pos < 1 || pos > length + 1) {
+            throw new SQLException(format("Invalid position: %s", pos));
+        }
+    }
+
+    /**
+     * A read-only {@link Blob} backed by either heap or memory-mapped buffer
+     */
+    static final class BufferBlob implements Blob {
+
+        private ByteBuffer buffer;
+
+        BufferBlob(ByteBuffer buffer) {
+            this.buffer = buffer.asReadOnlyBuffer();
+        }
+
+        private ByteBuffer buffer() throws SQLException {
+            if (buffer == null) {
+                throw new SQLException("Blob has been freed");
+            }
+            return buffer.duplicate();
+        }
+
+        @Override
+        public long length() throws SQLException {
+            return buffer().remaining();
+        }
+
+        long heapSize() {
+            return buffer == null || buffer.isDirect() ? 0 : buffer.remaining(); // memory-mapped content is off the heap
+        }
+
+        @Override
+        public byte[] getBytes(long pos, int length) throws SQLException {
+            ByteBuffer b = buffer();
+            checkPosition(pos, b.remaining());
+            b.position((int) pos - 1);
+            byte[] bytes = new byte[min(length, b.remaining())];
+            b.get(bytes);
+            return bytes;
+        }
+
+        @Override
+        public InputStream getBinaryStream() throws SQLException {
+            return new BufferInputStream(buffer());
+        }
+
+        @Override
+        public InputStream getBinaryStream(long pos, long length) throws SQLException {
+            ByteBuffer b = buffer();
+            checkPosition(pos, b.remaining());
+            b.position((int) pos - 1);
+            b.limit((int) min(b.limit(), b.position() + length));
+            return new BufferInputStream(b);
+        }
+
+        @Override
+        public long position(byte[] pattern, long start) throws SQLException {
+            ByteBuffer b = buffer();
+            checkPosition(start, b.remaining());
+            outer:
+            for (int i = (int) start - 1; i <= b.limit() - pattern.length; i++) {
+                for (int j = 0; j < pattern.length; j++) {
+                    if (b.get(i + j) != pattern[j]) continue outer;
+                }
+                return i + 1;
+            }
+            return -1;
+        }
+
+        @Override
+        public long position(Blob pattern, long start) throws SQLException {
+            return position(pattern.getBytes(1, (int) pattern.length()), start);
+        }
+
+        @Override
+        public int setBytes(long pos, byte[] bytes) throws SQLException {
+            throw new SQLFeatureNotSupportedException(EXCEPTION_MESSAGE);
+        }
+
+        @Override
+        public int setBytes(long pos, byte[] bytes, int offset, int len) throws SQLException {
+            throw new SQLFeatureNotSupportedException(EXCEPTION_MESSAGE);
+        }
+
+        @Override
+        public OutputStream setBinaryStream(long pos) throws SQLException {
+            throw new SQLFeatureNotSupportedException(EXCEPTION_MESSAGE);
+        }
+
+        @Override
+        public void truncate(long len) throws SQLException {
+            throw new SQLFeatureNotSupportedException(EXCEPTION_MESSAGE);
+        }
+
+        @Override
+        public void free() {
+            buffer = null; // mapping (if any) is released by the garbage collector
+        }
+    }
+
+    /**
+     * A read-only {@link Clob} backed by either heap or memory-mapped buffer
+     */
+    static final class BufferClob implements Clob {
+
+        private CharBuffer buffer;
+
+        BufferClob(CharBuffer buffer) {
+            this.buffer = buffer.asReadOnlyBuffer();
+        }
+
+        private CharBuffer buffer() throws SQLException {
+            if (buffer == null) {
+                throw new SQLException("Clob has been freed");
+            }
+            return buffer.duplicate();
+        }
+
+        @Override
+        public long length() throws SQLException {
+            return buffer().remaining();
+        }
+
+        long heapSize() {
+            return buffer == null || buffer.isDirect() ? 0 : 2L * buffer.remaining(); // memory-mapped content is off the heap
+        }
+
+        @Override
+        public String getSubString(long pos, int length) throws SQLException {
+            CharBuffer b = buffer();
+            checkPosition(pos, b.remaining());
+            return b.subSequence((int) pos - 1, (int) min(b.remaining(), pos - 1 + length)).toString();
+        }
+
+        @Override
+        public Reader getCharacterStream() throws SQLException {
+            return new BufferReader(buffer());
+        }
+
+        @Override
+        public Reader getCharacterStream(long pos, long length) throws SQLException {
+            CharBuffer b = buffer();
+            checkPosition(pos, b.remaining());
+            return new BufferReader(b.subSequence((int) pos - 1, (int) min(b.remaining(), pos - 1 + length)));
+        }
+
+        @Override
+        public InputStream getAsciiStream() throws SQLException {
+            return new AsciiInputStream(buffer());
+        }
+
+        @Override
+        public long position(String pattern, long start) throws SQLException {
+            CharBuffer b = buffer();
+            checkPosition(start, b.remaining());
+            outer:
+            for (int i = (int) start - 1; i <= b.limit() - pattern.length(); i++) {
+                for (int j = 0; j < pattern.length(); j++) {
+                    if (b.get(i + j) != pattern.charAt(j)) continue outer;
+                }
+                return i + 1;
+            }
+            return -1;
+        }
+
+        @Override
+        public long position(Clob pattern, long start) throws SQLException {
+            return position(pattern.getSubString(1, (int) pattern.length()), start);
+        }
+
+        @Override
+        public int setString(long pos, String str) throws SQLException {
+            throw new SQLFeatureNotSupportedException(EXCEPTION_MESSAGE);
+        }
+
+        @Override
+        public int setString(long pos, String str, int offset, int len) throws SQLException {
+            throw new SQLFeatureNotSupportedException(EXCEPTION_MESSAGE);
+        }
+
+        @Override
+        public OutputStream setAsciiStream(long pos) throws SQLException {
+            throw new SQLFeatureNotSupportedException(EXCEPTION_MESSAGE);
+        }
+
+        @Override
+        public Writer setCharacterStream(long pos) throws SQLException {
+            throw new SQLFeatureNotSupportedException(EXCEPTION_MESSAGE);
+        }
+
+        @Override
+        public void truncate(long len) throws SQLException {
+            throw new SQLFeatureNotSupportedException(EXCEPTION_MESSAGE);
+        }
+
+        @Override
+        public void free() {
+            buffer = null; // mapping (if any) is released by the garbage collector
+        }
+
+        @Override
+        public String toString() {
+            return buffer == null ? "" : buffer.duplicate().toString();
+        }
+    }
+
+    private static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(@Nonnull byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int count = min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) min(n, buffer.remaining());
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Encodes characters lazily chunk by chunk replacing non-ASCII ones
+     */
+    private static final class AsciiInputStream extends InputStream {
+
+        private final CharBuffer source;
+        private final CharsetEncoder encoder = US_ASCII.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer encoded = (ByteBuffer) ByteBuffer.allocate(BUFFER_SIZE).flip();
+        private boolean flushed;
+
+        private AsciiInputStream(CharBuffer source) {
+            this.source = source;
+        }
+
+        private boolean fill() {
+            if (!encoded.hasRemaining() && !flushed) {
+                encoded.clear();
+                if (encoder.encode(source, encoded, true).isUnderflow() && encoder.flush(encoded).isUnderflow()) {
+                    flushed = true;
+                }
+                encoded.flip();
+            }
+            return encoded.hasRemaining();
+        }
+
+        @Override
+        public int read() {
+            return fill() ? encoded.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(@Nonnull byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int count = min(len, encoded.remaining());
+            encoded.get(b, off, count);
+            return count;
+        }
+    }
+
+    private static final class BufferReader extends Reader {
+
+        private final CharBuffer buffer;
+
+        private BufferReader(CharBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read(@Nonnull char[] cbuf, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int count = min(len, buffer.remaining());
+            buffer.get(cbuf, off, count);
+            return count;
+        }
+
+        @Override
+        public void close() {
+            // nothing to close here
+        }
+    }
+
+    /**
+     * Opens the file on first read and closes it as soon as either the expected number of bytes is delivered or end of file is reached
+     * <br/>Drivers are free to stop reading after the declared length without ever getting to the end of file
+     */
+    private static final class LazyInputStream extends InputStream {
+
+        private final Path file;
+        private final long length;
+        private InputStream delegate;
+        private long delivered;
+        private boolean exhausted;
+
+        private LazyInputStream(Path file, long length) {
+            this.file = file;
+            this.length = length;
+            this.exhausted = length == 0;
+        }
+
+        private InputStream delegate() throws IOException {
+            if (delegate == null) {
+                delegate = Files.newInputStream(file);
+            }
+            return delegate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (exhausted) return -1;
+            int b = delegate().read();
+            delivered(b == -1 ? -1 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+            if (exhausted) return -1;
+            if (len == 0) return 0;
+            int count = delegate().read(b, off, (int) min(len, length - delivered));
+            delivered(count);
+            return count;
+        }
+
+        private void delivered(int count) throws IOException {
+            if (count == -1 || (delivered += count) >= length) {
+                close();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            exhausted = true;
+            if (delegate != null) {
+                delegate.close();
+                delegate = null;
+            }
+        }
+
+        void rewind() throws IOException {
+            close();
+            exhausted = length == 0;
+            delivered = 0;
+        }
+    }
+
+    /**
+     * Opens the file on first read and closes it as soon as end of file is reached
+     */
+    private static final class LazyReader extends Reader {
+
+        private final Path file;
+        private final Charset charset;
+        private Reader delegate;
+        private boolean exhausted;
+
+        private LazyReader(Path file, Charset charset) {
+            this.file = file;
+            this.charset = charset;
+        }
+
+        @Override
+        public int read(@Nonnull char[] cbuf, int off, int len) throws IOException {
+            if (exhausted) return -1;
+            if (delegate == null) {
+                delegate = Files.newBufferedReader(file, charset);
+            }
+            int count = delegate.read(cbuf, off, len);
+            if (count == -1) close();
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            exhausted = true;
+            if (delegate != null) {
+                delegate.close();
+                delegate = null;
+            }
+        }
+
+        void rewind() throws IOException {
+            close();
+            exhausted = false;
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016- Anatoly Kutyakov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package buckelieg.jdbc;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A re-iterable result of a SELECT statement which is detached from the database
+ * <br/>Rows are kept in memory up to the provided budget, the rest is held in a temporary file outside of the heap
+ * <br/>Every iteration reads rows anew, so the result may be traversed as many times as needed until it is closed
+ *
+ * @see Select#materialize(long)
+ */
+public interface Materialized extends Iterable<Map<String, Object>>, AutoCloseable {
+
+    /**
+     * @return the number of rows in this result
+     */
+    long size();
+
+    /**
+     * @return the number of rows which are held off the heap
+     */
+    long spilled();
+
+    /**
+     * Creates a new {@link Stream} over the rows of this result
+     *
+     * @return a {@link Stream} of {@link Map}s
+     */
+    @Nonnull
+    default Stream<Map<String, Object>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Releases underlying temporary file (if any)
+     * <br/>Large object values obtained from this result should not be accessed afterwards
+     */
+    @Override
+    void close();
+
+}
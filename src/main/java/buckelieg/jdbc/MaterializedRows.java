@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016- Anatoly Kutyakov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package buckelieg.jdbc;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static buckelieg.jdbc.Utils.newSQLRuntimeException;
+
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+final class MaterializedRows implements Materialized {
+
+    private final List<Map<String, Object>> inMemory;
+    @Nullable
+    private final SpillFile spill;
+
+    private MaterializedRows(List<Map<String, Object>> inMemory, @Nullable SpillFile spill) {
+        this.inMemory = inMemory;
+        this.spill = spill;
+    }
+
+    /**
+     * Drains provided stream keeping rows in memory until their estimated size exceeds provided budget
+     *
+     * @param rows         rows to materialize
+     * @param memoryBudget maximum number of bytes to keep on the heap
+     * @return materialized rows
+     */
+    static MaterializedRows of(Stream<Map<String, Object>> rows, long memoryBudget) {
+        List<Map<String, Object>> inMemory = new ArrayList<>();
+        SpillFile spill = null;
+        long used = 0;
+        try (Stream<Map<String, Object>> stream = rows) {
+            Iterator<Map<String, Object>> it = stream.iterator();
+            while (it.hasNext()) {
+                Map<String, Object> row = it.next();
+                if (spill == null && (used += RowCodec.sizeOf(row)) <= memoryBudget) {
+                    inMemory.add(row);
+                } else {
+                    if (spill == null) {
+                        spill = new SpillFile();
+                    }
+                    spill.write(row);
+                }
+            }
+        } catch (Exception e) {
+            if (spill != null) {
+                spill.close();
+            }
+            throw newSQLRuntimeException(e);
+        }
+        return new MaterializedRows(inMemory, spill);
+    }
+
+    @Override
+    public long size() {
+        return inMemory.size() + spilled();
+    }
+
+    @Override
+    public long spilled() {
+        return spill == null ? 0 : spill.rows();
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<Map<String, Object>> iterator() {
+        Iterator<Map<String, Object>> memory = Collections.unmodifiableList(inMemory).iterator();
+        if (spill == null) {
+            return memory;
+        }
+        return new Iterator<Map<String, Object>>() {
+
+            private Iterator<Map<String, Object>> current = memory;
+            private boolean inMemory = true;
+
+            @Override
+            public boolean hasNext() {
+                if (current.hasNext()) return true;
+                if (inMemory) {
+                    inMemory = false;
+                    current = spill.iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<Map<String, Object>> spliterator() {
+        return Spliterators.spliterator(iterator(), size(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    @Override
+    public void close() {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+}
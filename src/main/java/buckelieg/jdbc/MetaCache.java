@@ -0,0 +1,617 @@
+/*
+ * Copyright 2016- Anatoly Kutyakov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package buckelieg.jdbc;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.JDBCType;
+import java.sql.SQLException;
+import java.sql.SQLType;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static buckelieg.jdbc.Utils.newSQLRuntimeException;
+import static buckelieg.jdbc.Utils.rsStream;
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Table metadata cache of a database
+ * <br/>Metadata of a table is loaded at once by the first thread which requests it, concurrent requesters wait for the same load.
+ * Database is never queried while holding a lock of the underlying map
+ * <br/>Loaded metadata is published as immutable descriptors which are read without any locking
+ * <br/>Cache is bounded: entries expire after configured time to live and the eldest ones are evicted as soon as number of tables exceeds the limit.
+ * Tables which are altered, dropped or (re)created by this library queries are invalidated
+ * <br/>Caches are shared process-wide among all the queries of all {@link DB} instances connected to the same database:
+ * a {@link #shared()} cache binds itself on first use to the one registered for the connection URL, catalog and schema
+ * <br/>The registry keeps at most {@value #REGISTRY_SIZE} caches and evicts the least recently used one when exceeded.
+ * {@link DB} instances which are already bound to an evicted cache keep using it, while the new ones get a fresh cache
+ */
+@ThreadSafe
+@ParametersAreNonnullByDefault
+final class MetaCache {
+
+    @Immutable
+    static final class Table {
+
+        final String catalog;
+        final String schema;
+        final String name;
+
+        Table(@Nullable String catalog, @Nullable String schema, @Nullable String name) {
+            // drivers report absent catalog (schema) either as null or as an empty string
+            this.catalog = catalog == null || catalog.isEmpty() ? null : catalog;
+            this.schema = schema == null || schema.isEmpty() ? null : schema;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Table)) return false;
+            Table table = (Table) o;
+            return Objects.equals(catalog, table.catalog) && Objects.equals(schema, table.schema) && Objects.equals(name, table.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(catalog, schema, name);
+        }
+
+        @Override
+        public String toString() {
+            return format("%s%s%s",
+                    catalog == null || catalog.isEmpty() ? "" : catalog + ".",
+                    schema == null || schema.isEmpty() ? "" : schema + ".",
+                    name
+            );
+        }
+    }
+
+    @Immutable
+    static final class Column {
+
+        final String name;
+        final boolean pk;
+        @Nullable
+        final Table refTable;
+        final boolean nullable;
+        final SQLType sqlType;
+
+        Column(String name, boolean pk, @Nullable Table refTable, boolean nullable, SQLType sqlType) {
+            this.name = name;
+            this.pk = pk;
+            this.refTable = refTable;
+            this.nullable = nullable;
+            this.sqlType = sqlType;
+        }
+
+        boolean isForeignKey() {
+            return refTable != null;
+        }
+    }
+
+    @Immutable
+    static final class TableMeta {
+
+        final Table table;
+        private final Map<String, Column> columns;
+        private final long loadedAt;
+
+        TableMeta(Table table, Map<String, Column> columns) {
+            this(table, columns, System.nanoTime());
+        }
+
+        private TableMeta(Table table, Map<String, Column> columns, long loadedAt) {
+            this.table = table;
+            this.columns = unmodifiableMap(columns);
+            this.loadedAt = loadedAt;
+        }
+
+        /**
+         * @param name column name (case insensitive)
+         * @return column descriptor or null if table has no such column
+         */
+        @Nullable
+        Column column(String name) {
+            return columns.get(name.toLowerCase(Locale.ROOT));
+        }
+
+        Collection<Column> columns() {
+            return columns.values();
+        }
+    }
+
+    static final int DEFAULT_MAX_ENTRIES = 1024;
+    static final int REGISTRY_SIZE = 64;
+
+    private static final Map<String, MetaCache> REGISTRY = new LinkedHashMap<String, MetaCache>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MetaCache> eldest) {
+            return size() > REGISTRY_SIZE; // DB instances which are already bound keep their caches
+        }
+    };
+
+    private static final int SNAPSHOT_MAGIC = 0x4A444243; // "JDBC"
+    private static final int SNAPSHOT_VERSION = 2;
+
+    private static final Pattern DDL = Pattern.compile(
+            "^\\s*(?:ALTER|DROP|CREATE|RENAME)\\s+(?:(?:GLOBAL|LOCAL)\\s+)?(?:TEMPORARY\\s+)?TABLE\\s+(?:IF\\s+(?:NOT\\s+)?EXISTS\\s+)?((?:\"[^\"]+\"|[\\w$#@]+)(?:\\s*\\.\\s*(?:\"[^\"]+\"|[\\w$#@]+))*)",
+            Pattern.CASE_INSENSITIVE
+    );
+
+    private final ConcurrentMap<Table, CompletableFuture<TableMeta>> tables = new ConcurrentHashMap<>();
+    private final Queue<Map.Entry<Table, CompletableFuture<TableMeta>>> loadOrder = new ConcurrentLinkedQueue<>(); // eviction queue: eldest loads first
+    private final AtomicInteger loadOrderSize = new AtomicInteger();
+    private volatile long ttl; // nanoseconds, zero means no expiration
+    private volatile int maxEntries;
+    private final boolean shared;
+    private boolean configured;
+    private volatile MetaCache bound;
+
+    MetaCache() {
+        this(0, TimeUnit.NANOSECONDS, DEFAULT_MAX_ENTRIES);
+    }
+
+    MetaCache(long ttl, TimeUnit unit, int maxEntries) {
+        this.shared = false;
+        configure(ttl, unit, maxEntries);
+    }
+
+    private MetaCache(boolean shared) {
+        this.shared = shared;
+        this.maxEntries = DEFAULT_MAX_ENTRIES;
+    }
+
+    /**
+     * Creates a cache which is bound to the process-wide one of the database as soon as it is used with the database metadata first time
+     *
+     * @return a shared metadata cache
+     */
+    static MetaCache shared() {
+        return new MetaCache(true);
+    }
+
+    private static synchronized MetaCache registered(DatabaseMetaData dbMeta) throws SQLException {
+        Connection connection = dbMeta.getConnection();
+        return REGISTRY.computeIfAbsent(format("%s\0%s\0%s", dbMeta.getURL(), connection.getCatalog(), currentSchema(connection)), key -> new MetaCache());
+    }
+
+    private MetaCache target(DatabaseMetaData dbMeta) {
+        if (!shared) {
+            return this;
+        }
+        MetaCache target = bound;
+        if (target == null) {
+            synchronized (this) {
+                if ((target = bound) == null) {
+                    try {
+                        target = registered(dbMeta);
+                    } catch (SQLException e) {
+                        throw newSQLRuntimeException(e);
+                    }
+                    if (configured) {
+                        target.configure(ttl, TimeUnit.NANOSECONDS, maxEntries);
+                    }
+                    bound = target;
+                }
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Reconfigures this cache. Entries loaded so far are kept and are subject to the new settings
+     * <br/>A shared cache reconfigures the registered one which affects all the DB instances connected to the same database
+     *
+     * @param ttl        time to live of a table metadata (zero or negative means no expiration)
+     * @param unit       time to live unit
+     * @param maxEntries maximum number of tables to keep
+     * @throws IllegalArgumentException if <code>maxEntries</code> is not positive
+     */
+    void configure(long ttl, TimeUnit unit, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException(format("Illegal maximum number of entries: %s", maxEntries));
+        }
+        long ttlNanos = Math.max(0, requireNonNull(unit, "Time Unit must be provided").toNanos(ttl));
+        if (shared) {
+            synchronized (this) {
+                if (bound == null) { // to be applied on binding
+                    this.ttl = ttlNanos;
+                    this.maxEntries = maxEntries;
+                    this.configured = true;
+                    return;
+                }
+            }
+            bound.configure(ttlNanos, TimeUnit.NANOSECONDS, maxEntries);
+            return;
+        }
+        this.ttl = ttlNanos;
+        this.maxEntries = maxEntries;
+        evict();
+    }
+
+    /**
+     * Returns metadata of provided table loading it if necessary
+     *
+     * @param dbMeta database metadata to load table metadata with
+     * @param table  table to get metadata of
+     * @return table metadata
+     * @throws SQLRuntimeException if metadata could not be loaded
+     */
+    TableMeta get(DatabaseMetaData dbMeta, Table table) {
+        MetaCache target = target(dbMeta);
+        if (target != this) {
+            return target.get(dbMeta, table);
+        }
+        CompletableFuture<TableMeta> meta = tables.get(table);
+        if (meta != null && isExpired(meta)) {
+            tables.remove(table, meta);
+            meta = null;
+        }
+        if (meta == null) {
+            CompletableFuture<TableMeta> loading = new CompletableFuture<>();
+            meta = tables.putIfAbsent(table, loading);
+            if (meta == null) { // this thread is the one to load
+                try {
+                    TableMeta loaded = load(dbMeta, table);
+                    loading.complete(loaded);
+                    loaded(table, loading);
+                    evict();
+                    return loaded;
+                } catch (RuntimeException e) {
+                    tables.remove(table, loading); // let the next one retry
+                    loading.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        try {
+            return meta.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : newSQLRuntimeException(cause);
+        }
+    }
+
+    /**
+     * Invalidates metadata of the table if provided statement is a table DDL one
+     *
+     * @param dbMeta metadata of the database the statement was executed against
+     * @param query  an SQL statement
+     */
+    void invalidate(DatabaseMetaData dbMeta, String query) {
+        MetaCache target = target(dbMeta);
+        if (target != this) {
+            target.invalidate(dbMeta, query);
+            return;
+        }
+        Matcher matcher = DDL.matcher(query);
+        if (matcher.find()) {
+            String[] names = matcher.group(1).split("\\s*\\.\\s*");
+            String name = unquote(names[names.length - 1]);
+            String schema = names.length > 1 ? unquote(names[names.length - 2]) : null;
+            tables.keySet().removeIf(table -> name.equalsIgnoreCase(table.name) && (schema == null || schema.equalsIgnoreCase(table.schema)));
+        }
+    }
+
+    /**
+     * Invalidates all the entries of this cache
+     */
+    void invalidateAll() {
+        MetaCache target = shared ? bound : this;
+        if (target == this) {
+            tables.clear();
+            compact();
+        } else if (target != null) {
+            target.invalidateAll();
+        }
+    }
+
+    int size() {
+        MetaCache target = shared ? bound : this;
+        return target == this ? tables.size() : target == null ? 0 : target.size();
+    }
+
+    private static String unquote(String identifier) {
+        return identifier.startsWith("\"") ? identifier.substring(1, identifier.length() - 1) : identifier;
+    }
+
+    private boolean isExpired(CompletableFuture<TableMeta> meta) {
+        long ttl = this.ttl;
+        TableMeta loaded = meta.getNow(null); // loads in progress never expire
+        return ttl > 0 && loaded != null && System.nanoTime() - loaded.loadedAt > ttl;
+    }
+
+    private void loaded(Table table, CompletableFuture<TableMeta> meta) {
+        loadOrder.offer(new AbstractMap.SimpleImmutableEntry<>(table, meta));
+        if (loadOrderSize.incrementAndGet() > 2 * Math.max(tables.size(), maxEntries)) {
+            compact(); // too many invalidated or reloaded entries are queued
+        }
+    }
+
+    private void compact() {
+        loadOrder.removeIf(entry -> {
+            if (tables.get(entry.getKey()) != entry.getValue()) {
+                loadOrderSize.decrementAndGet();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private void evict() {
+        while (tables.size() > maxEntries) {
+            Map.Entry<Table, CompletableFuture<TableMeta>> eldest = loadOrder.poll();
+            if (eldest == null) {
+                return; // everything is being loaded right now
+            }
+            loadOrderSize.decrementAndGet();
+            tables.remove(eldest.getKey(), eldest.getValue()); // no-op for invalidated or reloaded ones
+        }
+    }
+
+    /**
+     * Loads metadata of all the columns of the table at once: one round trip per columns, primary keys and imported keys
+     */
+    private static TableMeta load(DatabaseMetaData dbMeta, Table table) {
+        Set<String> pks;
+        Map<String, Table> fks = new HashMap<>();
+        List<Object[]> columns;
+        try (
+                Stream<String> pkNames = rsStream(dbMeta.getPrimaryKeys(table.catalog, table.schema, table.name), rs -> rs.getString("COLUMN_NAME"));
+                Stream<Object[]> importedKeys = rsStream(dbMeta.getImportedKeys(table.catalog, table.schema, table.name), rs -> new Object[]{
+                        rs.getString("FKCOLUMN_NAME"),
+                        new Table(rs.getString("PKTABLE_CAT"), rs.getString("PKTABLE_SCHEM"), rs.getString("PKTABLE_NAME"))
+                });
+                Stream<Object[]> tableColumns = rsStream(dbMeta.getColumns(table.catalog, table.schema, table.name, null), rs -> new Object[]{
+                        rs.getString("COLUMN_NAME"),
+                        rs.getInt("NULLABLE") == DatabaseMetaData.columnNullable,
+                        rs.getInt("DATA_TYPE"),
+                        new Table(rs.getString("TABLE_CAT"), rs.getString("TABLE_SCHEM"), rs.getString("TABLE_NAME"))
+                })
+        ) {
+            pks = pkNames.map(name -> name.toLowerCase(Locale.ROOT)).collect(toSet());
+            importedKeys.forEach(key -> fks.putIfAbsent(((String) key[0]).toLowerCase(Locale.ROOT), (Table) key[1]));
+            columns = tableColumns.filter(column -> isSame(table, (Table) column[3])).collect(toList()); // table name is a pattern for the driver
+        } catch (SQLException e) {
+            throw newSQLRuntimeException(e);
+        }
+        Map<String, Column> descriptors = new HashMap<>(columns.size() * 4 / 3 + 1);
+        Table owner = columns.isEmpty() ? null : (Table) columns.get(0)[3];
+        for (Object[] column : columns) {
+            if (!owner.equals(column[3])) {
+                continue; // table is found in several schemas (catalogs) - the first one is taken
+            }
+            String name = (String) column[0];
+            String key = name.toLowerCase(Locale.ROOT);
+            descriptors.putIfAbsent(key, new Column(name, pks.contains(key), fks.get(key), (Boolean) column[1], toSQLType((Integer) column[2])));
+        }
+        return new TableMeta(table, descriptors);
+    }
+
+    private static boolean isSame(Table table, Table found) {
+        return table.name.equals(found.name)
+                && (table.schema == null || table.schema.equals(found.schema))
+                && (table.catalog == null || table.catalog.equals(found.catalog));
+    }
+
+    /**
+     * Resolves provided table name the way the database does for unquoted identifiers
+     * <br/>If schema is omitted then current schema of the connection is assumed
+     *
+     * @param connection    a connection to resolve table name with
+     * @param qualifiedName table name optionally prefixed with schema (and catalog) name
+     * @return a list of matching tables (which is empty if there is no such table)
+     * @throws SQLException if something went wrong
+     */
+    static List<Table> resolve(Connection connection, String qualifiedName) throws SQLException {
+        DatabaseMetaData dbMeta = connection.getMetaData();
+        String[] names = qualifiedName.trim().split("\\s*\\.\\s*");
+        String name = identifier(dbMeta, names[names.length - 1]);
+        String schema = names.length > 1 ? identifier(dbMeta, names[names.length - 2]) : currentSchema(connection);
+        String catalog = names.length > 2 ? identifier(dbMeta, names[names.length - 3]) : null;
+        try (Stream<Table> tables = rsStream(dbMeta.getTables(catalog, schema, name, null), rs -> new Table(rs.getString("TABLE_CAT"), rs.getString("TABLE_SCHEM"), rs.getString("TABLE_NAME")))) {
+            return tables.filter(table -> name.equals(table.name)).collect(toList()); // name is a pattern for the driver
+        }
+    }
+
+    private static String identifier(DatabaseMetaData dbMeta, String identifier) throws SQLException {
+        if (identifier.startsWith("\"")) return unquote(identifier);
+        if (dbMeta.storesUpperCaseIdentifiers()) return identifier.toUpperCase(Locale.ROOT);
+        if (dbMeta.storesLowerCaseIdentifiers()) return identifier.toLowerCase(Locale.ROOT);
+        return identifier;
+    }
+
+    @Nullable
+    private static String currentSchema(Connection connection) {
+        try {
+            return connection.getSchema();
+        } catch (SQLException | AbstractMethodError e) {
+            return null; // pre JDBC 4.1 driver
+        }
+    }
+
+    /**
+     * Calculates a cheap fingerprint of the database schema: database product and version, connection URL and user
+     * and the list of tables of the schemas provided tables belong to
+     * <br/>The fingerprint does not reflect changes of table columns
+     *
+     * @param dbMeta database metadata
+     * @param tables tables which schemas are to be fingerprinted
+     * @return schema fingerprint
+     * @throws SQLException if something went wrong
+     */
+    static long fingerprint(DatabaseMetaData dbMeta, Collection<Table> tables) throws SQLException {
+        List<String> parts = new ArrayList<>(asList(dbMeta.getDatabaseProductName(), dbMeta.getDatabaseProductVersion(), dbMeta.getURL(), dbMeta.getUserName()));
+        Set<Table> schemas = new TreeSet<>(Comparator.comparing(Table::toString));
+        for (Table table : tables) {
+            schemas.add(new Table(table.catalog, table.schema, ""));
+        }
+        for (Table schema : schemas) {
+            try (Stream<String> names = rsStream(
+                    dbMeta.getTables(schema.catalog, schema.schema, "%", new String[]{"TABLE", "VIEW"}),
+                    rs -> schema.equals(new Table(rs.getString("TABLE_CAT"), rs.getString("TABLE_SCHEM"), "")) ? rs.getString("TABLE_NAME") : null // schema name is a pattern
+            )) {
+                parts.add(schema.toString());
+                names.filter(Objects::nonNull).sorted().forEach(parts::add);
+            }
+        }
+        long hash = 0xcbf29ce484222325L; // FNV-1a
+        for (String part : parts) {
+            String value = String.valueOf(part) + '\0';
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Writes the content of this cache along with the schema fingerprint
+     *
+     * @param dbMeta metadata of the database the content corresponds to
+     * @param out    an output to write to
+     * @throws IOException  if something went wrong
+     * @throws SQLException if fingerprint could not be calculated
+     * @see #fingerprint(DatabaseMetaData, Collection)
+     */
+    void write(DatabaseMetaData dbMeta, DataOutput out) throws IOException, SQLException {
+        MetaCache target = target(dbMeta);
+        if (target != this) {
+            target.write(dbMeta, out);
+            return;
+        }
+        List<TableMeta> loaded = tables.values().stream().map(meta -> meta.getNow(null)).filter(Objects::nonNull).collect(toList());
+        long fingerprint = fingerprint(dbMeta, loaded.stream().map(meta -> meta.table).collect(toList()));
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeInt(loaded.size());
+        for (TableMeta meta : loaded) {
+            writeTable(out, meta.table);
+            out.writeInt(meta.columns.size());
+            for (Column column : meta.columns.values()) {
+                out.writeUTF(column.name);
+                out.writeBoolean(column.pk);
+                out.writeBoolean(column.nullable);
+                out.writeInt(column.sqlType.getVendorTypeNumber());
+                out.writeBoolean(column.refTable != null);
+                if (column.refTable != null) {
+                    writeTable(out, column.refTable);
+                }
+            }
+        }
+        out.writeLong(fingerprint); // the last so that it is verified against the schemas of the tables read
+    }
+
+    /**
+     * Reads the content previously written by {@link #write(DatabaseMetaData, DataOutput)} into this cache
+     * <br/>Nothing is read if the snapshot corresponds to another schema
+     *
+     * @param dbMeta metadata of the database to read the content for
+     * @param in     an input to read from
+     * @return true if snapshot was accepted, false - otherwise
+     * @throws IOException  if something went wrong
+     * @throws SQLException if fingerprint could not be calculated
+     */
+    boolean read(DatabaseMetaData dbMeta, DataInput in) throws IOException, SQLException {
+        MetaCache target = target(dbMeta);
+        if (target != this) {
+            return target.read(dbMeta, in);
+        }
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+            return false;
+        }
+        List<TableMeta> loaded = new ArrayList<>();
+        long now = System.nanoTime();
+        for (int tableCount = in.readInt(); tableCount > 0; tableCount--) {
+            Table table = readTable(in);
+            int columnCount = in.readInt();
+            Map<String, Column> columns = new HashMap<>(columnCount * 4 / 3 + 1);
+            for (; columnCount > 0; columnCount--) {
+                String name = in.readUTF();
+                boolean pk = in.readBoolean();
+                boolean nullable = in.readBoolean();
+                SQLType sqlType = toSQLType(in.readInt());
+                Table refTable = in.readBoolean() ? readTable(in) : null;
+                columns.put(name.toLowerCase(Locale.ROOT), new Column(name, pk, refTable, nullable, sqlType));
+            }
+            loaded.add(new TableMeta(table, columns, now));
+        }
+        if (in.readLong() != fingerprint(dbMeta, loaded.stream().map(meta -> meta.table).collect(toList()))) {
+            return false;
+        }
+        for (TableMeta meta : loaded) {
+            CompletableFuture<TableMeta> future = CompletableFuture.completedFuture(meta);
+            tables.put(meta.table, future);
+            loaded(meta.table, future);
+        }
+        evict();
+        return true;
+    }
+
+    private static void writeTable(DataOutput out, Table table) throws IOException {
+        writeNullable(out, table.catalog);
+        writeNullable(out, table.schema);
+        writeNullable(out, table.name);
+    }
+
+    private static Table readTable(DataInput in) throws IOException {
+        return new Table(readNullable(in), readNullable(in), readNullable(in));
+    }
+
+    private static void writeNullable(DataOutput out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    private static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static SQLType toSQLType(int type) {
+        try {
+            return JDBCType.valueOf(type);
+        } catch (IllegalArgumentException e) {
+            return JDBCType.OTHER; // vendor specific type
+        }
+    }
+
+}
@@ -18,11 +18,17 @@ package buckelieg.jdbc;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
-import java.sql.JDBCType;
-import java.sql.ParameterMetaData;
-import java.sql.SQLType;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
 import java.util.Objects;
 
+import static buckelieg.jdbc.Utils.newSQLRuntimeException;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
@@ -40,12 +46,18 @@ public final class P<T> {
     private final String name;
     private final T value;
     private final SQLType type;
+    private final long length;
 
     private P(int mode, SQLType type, String name, @Nullable T value) {
+        this(mode, type, name, value, -1L);
+    }
+
+    private P(int mode, SQLType type, String name, @Nullable T value, long length) {
         this.mode = mode;
         this.type = requireNonNull(type, "Parameter type must be provided");
         this.name = requireNonNull(name, "Parameter name must be provided");
         this.value = value;
+        this.length = length;
     }
 
     /**
@@ -189,6 +201,147 @@ public final class P<T> {
         return inOut(JDBCType.JAVA_OBJECT, "", value);
     }
 
+    /**
+     * Creates an anonymous <code>IN</code> parameter which value is streamed to the database as binary data
+     * <br/>Provided stream is read once by the JDBC driver when statement is executed and is not closed by this parameter
+     *
+     * @param stream binary data source
+     * @param length the number of bytes in the stream or <code>-1</code> if unknown
+     * @return an <code>IN</code> parameter with {@link JDBCType#LONGVARBINARY} type
+     * @throws NullPointerException if stream is null
+     * @see PreparedStatement#setBinaryStream(int, InputStream, long)
+     */
+    public static P<InputStream> binary(InputStream stream, long length) {
+        return new P<>(ParameterMetaData.parameterModeIn, JDBCType.LONGVARBINARY, "", requireNonNull(stream, "Input stream must be provided"), length);
+    }
+
+    /**
+     * Creates an anonymous <code>IN</code> parameter which value is streamed to the database from provided file
+     * <br/>The file is opened lazily when the driver starts reading and is closed as soon as the driver has read as many bytes as the file had when this parameter was created (or closes the stream itself)
+     * <br/>The parameter can be reused: the file is read anew by every statement execution
+     *
+     * @param file binary data source
+     * @return an <code>IN</code> parameter with {@link JDBCType#LONGVARBINARY} type
+     * @throws NullPointerException if file is null
+     * @throws SQLRuntimeException  if file size can not be obtained
+     * @see #binary(InputStream, long)
+     */
+    public static P<InputStream> binary(Path file) {
+        long size = size(requireNonNull(file, "File must be provided"));
+        return new P<>(ParameterMetaData.parameterModeIn, JDBCType.LONGVARBINARY, "", Lobs.lazyInputStream(file, size), size);
+    }
+
+    /**
+     * Creates an anonymous <code>IN</code> parameter which value is streamed to the database from provided channel starting at its current position
+     * <br/>The channel is not closed by this parameter
+     *
+     * @param channel binary data source
+     * @return an <code>IN</code> parameter with {@link JDBCType#LONGVARBINARY} type
+     * @throws NullPointerException if channel is null
+     * @throws SQLRuntimeException  if channel size can not be obtained
+     * @see #binary(InputStream, long)
+     */
+    public static P<InputStream> binary(FileChannel channel) {
+        requireNonNull(channel, "File channel must be provided");
+        try {
+            return binary(Lobs.channelInputStream(channel), channel.size() - channel.position());
+        } catch (IOException e) {
+            throw newSQLRuntimeException(e);
+        }
+    }
+
+    /**
+     * Creates an anonymous <code>IN</code> parameter which value is streamed to the database as character data
+     * <br/>Provided reader is read once by the JDBC driver when statement is executed and is not closed by this parameter
+     *
+     * @param reader character data source
+     * @param length the number of characters in the reader or <code>-1</code> if unknown
+     * @return an <code>IN</code> parameter with {@link JDBCType#LONGVARCHAR} type
+     * @throws NullPointerException if reader is null
+     * @see PreparedStatement#setCharacterStream(int, Reader, long)
+     */
+    public static P<Reader> character(Reader reader, long length) {
+        return new P<>(ParameterMetaData.parameterModeIn, JDBCType.LONGVARCHAR, "", requireNonNull(reader, "Reader must be provided"), length);
+    }
+
+    /**
+     * Creates an anonymous <code>IN</code> parameter which value is streamed to the database from provided text file
+     * <br/>The file is opened lazily when the driver starts reading and is closed as soon as it is read through (or the driver closes the reader itself)
+     * <br/>The parameter can be reused: the file is read anew by every statement execution
+     *
+     * @param file    character data source
+     * @param charset file encoding
+     * @return an <code>IN</code> parameter with {@link JDBCType#LONGVARCHAR} type
+     * @throws NullPointerException if file or charset is null
+     * @see #character(Reader, long)
+     */
+    public static P<Reader> character(Path file, Charset charset) {
+        return character(Lobs.lazyReader(requireNonNull(file, "File must be provided"), requireNonNull(charset, "Charset must be provided")), -1L);
+    }
+
+    /**
+     * Creates an anonymous <code>IN</code> parameter which value is streamed to the database as <code>BLOB</code>
+     *
+     * @param stream binary data source
+     * @param length the number of bytes in the stream or <code>-1</code> if unknown
+     * @return an <code>IN</code> parameter with {@link JDBCType#BLOB} type
+     * @throws NullPointerException if stream is null
+     * @see PreparedStatement#setBlob(int, InputStream, long)
+     */
+    public static P<InputStream> blob(InputStream stream, long length) {
+        return new P<>(ParameterMetaData.parameterModeIn, JDBCType.BLOB, "", requireNonNull(stream, "Input stream must be provided"), length);
+    }
+
+    /**
+     * Creates an anonymous <code>IN</code> parameter which value is streamed to the database from provided file as <code>BLOB</code>
+     * <br/>The file is opened and closed the same way as by {@link #binary(Path)}
+     *
+     * @param file binary data source
+     * @return an <code>IN</code> parameter with {@link JDBCType#BLOB} type
+     * @throws NullPointerException if file is null
+     * @throws SQLRuntimeException  if file size can not be obtained
+     * @see #binary(Path)
+     */
+    public static P<InputStream> blob(Path file) {
+        long size = size(requireNonNull(file, "File must be provided"));
+        return blob(Lobs.lazyInputStream(file, size), size);
+    }
+
+    /**
+     * Creates an anonymous <code>IN</code> parameter which value is streamed to the database as <code>CLOB</code>
+     *
+     * @param reader character data source
+     * @param length the number of characters in the reader or <code>-1</code> if unknown
+     * @return an <code>IN</code> parameter with {@link JDBCType#CLOB} type
+     * @throws NullPointerException if reader is null
+     * @see PreparedStatement#setClob(int, Reader, long)
+     */
+    public static P<Reader> clob(Reader reader, long length) {
+        return new P<>(ParameterMetaData.parameterModeIn, JDBCType.CLOB, "", requireNonNull(reader, "Reader must be provided"), length);
+    }
+
+    /**
+     * Creates an anonymous <code>IN</code> parameter which value is streamed to the database from provided text file as <code>CLOB</code>
+     * <br/>The file is opened and closed the same way as by {@link #character(Path, Charset)}
+     *
+     * @param file    character data source
+     * @param charset file encoding
+     * @return an <code>IN</code> parameter with {@link JDBCType#CLOB} type
+     * @throws NullPointerException if file or charset is null
+     * @see #character(Path, Charset)
+     */
+    public static P<Reader> clob(Path file, Charset charset) {
+        return clob(Lobs.lazyReader(requireNonNull(file, "File must be provided"), requireNonNull(charset, "Charset must be provided")), -1L);
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw newSQLRuntimeException(e);
+        }
+    }
+
     /**
      * Test if this is an <code>IN</code> parameter
      *
@@ -249,6 +402,46 @@ public final class P<T> {
         return type;
     }
 
+    /**
+     * Binds the value of this parameter to provided statement
+     * <br/>Streams and readers are bound via corresponding streaming methods, so their content is never materialized
+     *
+     * @param statement statement to bind value to
+     * @param index     parameter index (starts with 1)
+     * @throws SQLException if binding fails
+     */
+    void set(PreparedStatement statement, int index) throws SQLException {
+        try {
+            Lobs.rewind(value); // file backed values are read anew by every execution
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+        if (value instanceof InputStream) {
+            InputStream stream = (InputStream) value;
+            if (type == JDBCType.BLOB) {
+                if (length < 0) statement.setBlob(index, stream);
+                else statement.setBlob(index, stream, length);
+            } else {
+                if (length < 0) statement.setBinaryStream(index, stream);
+                else statement.setBinaryStream(index, stream, length);
+            }
+        } else if (value instanceof Reader) {
+            Reader reader = (Reader) value;
+            if (type == JDBCType.CLOB) {
+                if (length < 0) statement.setClob(index, reader);
+                else statement.setClob(index, reader, length);
+            } else if (type == JDBCType.NCLOB) {
+                if (length < 0) statement.setNClob(index, reader);
+                else statement.setNClob(index, reader, length);
+            } else {
+                if (length < 0) statement.setCharacterStream(index, reader);
+                else statement.setCharacterStream(index, reader, length);
+            }
+        } else {
+            statement.setObject(index, value);
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
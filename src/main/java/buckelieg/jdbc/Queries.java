@@ -69,7 +69,7 @@ public final class Queries {
      */
     @Nonnull
     public static <T> List<T> list(Connection conn, TryFunction<ResultSet, T, SQLException> mapper, String query, Object... params) {
-        return new DB(conn).select(query, params).list(mapper);
+        return db(conn).select(query, params).list(mapper);
     }
 
     /**
@@ -97,7 +97,7 @@ public final class Queries {
      */
     @Nonnull
     public static List<Map<String, Object>> list(Connection conn, String query, Object... params) {
-        return new DB(conn).select(query, params).list();
+        return db(conn).select(query, params).list();
     }
 
     /**
@@ -182,7 +182,7 @@ public final class Queries {
      */
     @Nonnull
     public static <T> Optional<T> single(Connection conn, TryFunction<ResultSet, T, SQLException> mapper, String query, Object... params) {
-        return new DB(conn).select(query, params).single(mapper);
+        return db(conn).select(query, params).single(mapper);
     }
 
     /**
@@ -209,7 +209,7 @@ public final class Queries {
      */
     @Nonnull
     public static Optional<Map<String, Object>> single(Connection conn, String query, Object... params) {
-        return new DB(conn).select(query, params).single();
+        return db(conn).select(query, params).single();
     }
 
     /**
@@ -234,7 +234,7 @@ public final class Queries {
      * @return affected rows count
      */
     public static long update(Connection conn, String query, Object... params) {
-        return new DB(conn).update(query, params).execute();
+        return db(conn).update(query, params).execute();
     }
 
     /**
@@ -260,7 +260,7 @@ public final class Queries {
      */
     @Nonnull
     public static <T> Optional<T> call(Connection conn, TryFunction<CallableStatement, T, SQLException> mapper, String query, Object... params) {
-        return new DB(conn).procedure(query, params).call(mapper);
+        return db(conn).procedure(query, params).call(mapper);
     }
 
     /**
@@ -274,7 +274,7 @@ public final class Queries {
      */
     @Nonnull
     public static <T> List<T> callForList(Connection conn, TryFunction<ResultSet, T, SQLException> mapper, String query) {
-        return new DB(conn).procedure(query).list(mapper);
+        return db(conn).procedure(query).list(mapper);
     }
 
     /**
@@ -300,7 +300,7 @@ public final class Queries {
      * @param params procedure IN parameters (if any)
      */
     public static void call(Connection conn, String query, Object... params) {
-        new DB(conn).procedure(query, params).call();
+        db(conn).procedure(query, params).call();
     }
 
     /**
@@ -322,7 +322,7 @@ public final class Queries {
      * @param params query parameters (if any)
      */
     public static void execute(Connection conn, String query, Object... params) {
-        new DB(conn).query(query, params).execute();
+        db(conn).query(query, params).execute();
     }
 
     /**
@@ -343,7 +343,7 @@ public final class Queries {
      * @param script a script to execute against provided connection
      */
     public static void execute(Connection conn, String script, Map<String, ?> params) {
-        new DB(conn).script(script, params).execute();
+        db(conn).script(script, params).execute();
     }
 
     /**
@@ -360,4 +360,8 @@ public final class Queries {
         return requireNonNull(db, "Provide connection first using setConnection(Connection) method!");
     }
 
+    private static DB db(Connection conn) {
+        return new DB(requireNonNull(conn, "Connection must be provided.")); // cheap: shares executor and metadata cache with the other instances
+    }
+
 }
@@ -132,6 +132,24 @@ public interface Query extends AutoCloseable {
     @Nonnull
     String asSQL();
 
+    /**
+     * Represents this <code>query</code> AS <code>SQL</code> string which is truncated to provided length
+     * <br/>Truncated string is marked with trailing <code>...</code>
+     *
+     * @param maxLength maximum length of the string (not including truncation mark)
+     * @return this query as a SQL string
+     * @throws IllegalArgumentException if maxLength is negative
+     * @see #asSQL()
+     */
+    @Nonnull
+    default String asSQL(int maxLength) {
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("Max length must not be negative");
+        }
+        String sql = asSQL();
+        return sql.length() > maxLength ? sql.substring(0, maxLength) + "..." : sql;
+    }
+
     /**
      * Closes this query
      *
@@ -34,8 +34,11 @@ import static java.lang.System.currentTimeMillis;
 @SuppressWarnings("unchecked")
 final class QueryImpl extends AbstractQuery<Statement> {
 
-    QueryImpl(Lock lock, Condition condition, Executor conveyor, TrySupplier<Connection, SQLException> connectionSupplier, String query, Object... params) {
+    private final MetaCache metaCache;
+
+    QueryImpl(Lock lock, Condition condition, Executor conveyor, MetaCache metaCache, TrySupplier<Connection, SQLException> connectionSupplier, String query, Object... params) {
         super(lock, condition, false, conveyor, connectionSupplier, null, query, params);
+        this.metaCache = metaCache;
     }
 
     /**
@@ -57,6 +60,7 @@ final class QueryImpl extends AbstractQuery<Statement> {
             } else {
                 statement.execute(query);
             }
+            metaCache.invalidate(statement.getConnection().getMetaData(), query); // table definition might have been changed
             return currentTimeMillis() - start;
         });
         close(); // force closing this statement since we will not process any of its possible results
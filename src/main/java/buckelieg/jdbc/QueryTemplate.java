@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016- Anatoly Kutyakov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package buckelieg.jdbc;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static buckelieg.jdbc.Utils.asIterable;
+import static buckelieg.jdbc.Utils.checkAnonymous;
+import static java.lang.String.format;
+
+/**
+ * A query with named parameters compiled to the positional ones
+ * <br/>Each named parameter occurrence is expanded to as many positional parameters as its value has elements (arrays and iterables form <code>IN</code> lists)
+ * <br/>Once compiled, the template turns any set of named parameter values of the same shape into a plain array of positional parameter values
+ */
+@Immutable
+@ParametersAreNonnullByDefault
+final class QueryTemplate {
+
+    private static final Object MISSING = new Object();
+
+    private final String query;
+    private final String[] names; // named parameter occurrences in order
+    private final int[] widths; // number of positional parameters for each occurrence
+    private final int size;
+
+    private QueryTemplate(String query, String[] names, int[] widths, int size) {
+        this.query = query;
+        this.names = names;
+        this.widths = widths;
+        this.size = size;
+    }
+
+    /**
+     * Compiles provided query using sample parameter values to determine <code>IN</code> lists sizes
+     *
+     * @param query  a query with named parameters
+     * @param params sample named parameter values (names are with or without leading colon)
+     * @return compiled query template
+     * @throws IllegalArgumentException if query has named parameters which values are not provided
+     */
+    static QueryTemplate compile(String query, Map<String, ?> params) {
+        StringBuilder compiled = new StringBuilder(query.length());
+        List<String> names = new ArrayList<>();
+        List<Integer> widths = new ArrayList<>();
+        int size = 0;
+        SqlLexer lexer = new SqlLexer(query);
+        for (SqlLexer.Token token = lexer.next(); token != SqlLexer.Token.END; token = lexer.next()) {
+            String name;
+            Object value;
+            if (token == SqlLexer.Token.NAMED_PARAMETER && (value = value(params, name = query.substring(lexer.start(), lexer.end()))) != MISSING) {
+                int width = 0;
+                for (Object ignored : asIterable(value)) {
+                    compiled.append(width++ == 0 ? "?" : ",?");
+                }
+                names.add(name);
+                widths.add(width);
+                size += width;
+            } else {
+                compiled.append(query, lexer.start(), lexer.end()); // unknown named parameters are left as is
+            }
+        }
+        return new QueryTemplate(checkAnonymous(compiled.toString()), names.toArray(new String[0]), widths.stream().mapToInt(Integer::intValue).toArray(), size);
+    }
+
+    private static Object value(Map<String, ?> params, String name) {
+        if (params.containsKey(name)) {
+            return params.get(name);
+        }
+        String bareName = name.substring(1);
+        return params.containsKey(bareName) ? params.get(bareName) : MISSING;
+    }
+
+    /**
+     * @return a query with positional parameters
+     */
+    String query() {
+        return query;
+    }
+
+    /**
+     * Fills positional parameter values in
+     *
+     * @param params named parameter values (names are with or without leading colon)
+     * @return positional parameter values
+     * @throws IllegalArgumentException if any of the parameters is missing or its <code>IN</code> list size differs from the compiled one
+     */
+    Object[] values(Map<String, ?> params) {
+        Object[] values = new Object[size];
+        int position = 0;
+        for (int i = 0; i < names.length; i++) {
+            Object value = value(params, names[i]);
+            if (value == MISSING) {
+                throw new IllegalArgumentException(format("Named parameter '%s' is missing for query: '%s'", names[i], query));
+            }
+            int width = 0;
+            for (Object o : asIterable(value)) {
+                if (++width > widths[i]) {
+                    break;
+                }
+                values[position++] = o;
+            }
+            if (width != widths[i]) {
+                throw new IllegalArgumentException(format("Named parameter '%s' is expected to have %s value(s) for query: '%s'", names[i], widths[i], query));
+            }
+        }
+        return values;
+    }
+
+}
@@ -15,20 +15,15 @@
  */
 package buckelieg.jdbc;
 
-import buckelieg.jdbc.fn.TryConsumer;
-
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
-import javax.annotation.ParametersAreNullableByDefault;
 import java.sql.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentMap;
-import java.util.function.Consumer;
 
 import static buckelieg.jdbc.Utils.newSQLRuntimeException;
-import static buckelieg.jdbc.Utils.rsStream;
 import static java.lang.String.format;
+import static java.util.Collections.unmodifiableList;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
 import static java.util.stream.Collectors.toList;
@@ -36,98 +31,129 @@ import static java.util.stream.Collectors.toList;
 @ParametersAreNonnullByDefault
 final class RSMeta implements Metadata {
 
-    static final class Table {
-        private String catalog;
-        private String schema;
-        private String name;
-
-        @Override
-        public String toString() {
-            return format("%s%s%s",
-                    catalog == null || catalog.isEmpty() ? "" : catalog + ".",
-                    schema == null || schema.isEmpty() ? "" : schema + ".",
-                    name
-            );
+    /**
+     * Result set column descriptor: what result set metadata tells about the column
+     * <br/>Table level properties (keys) are taken from the shared {@link MetaCache}
+     */
+    private static final class Column {
+        private final MetaCache.Table table;
+        private final String name;
+        private final boolean nullable;
+        private final SQLType sqlType;
+        private final Class<?> javaType;
+
+        private Column(MetaCache.Table table, String name, boolean nullable, SQLType sqlType, Class<?> javaType) {
+            this.table = table;
+            this.name = name;
+            this.nullable = nullable;
+            this.sqlType = sqlType;
+            this.javaType = javaType;
         }
     }
 
-    static final class Column {
-        private Table ownTable;
-        private String name;
-        private Boolean pk;
-        private Boolean fk;
-        private Boolean nullable;
-        private SQLType sqlType;
-        private Class<?> javaType;
-        private Table refTable;
-
-        @Override
-        public String toString() {
-            return format("%s%s%s%s",
-                    ownTable.catalog == null || ownTable.catalog.isEmpty() ? "" : ownTable.catalog + ".",
-                    ownTable.schema == null || ownTable.schema.isEmpty() ? "" : ownTable.schema + ".",
-                    ownTable.name == null || ownTable.name.isEmpty() ? "" : ownTable.name + ".",
-                    name
-            );
-        }
-    }
-
-    private final ConcurrentMap<String, Column> columnsCache;
+    private final MetaCache metaCache;
     private final DatabaseMetaData dbMeta;
     private final ResultSetMetaData rsMeta;
-
-    public RSMeta(Connection connection, ResultSet resultSet, ConcurrentMap<String, Column> columnsCache) {
+    // per result set descriptors which are built once on first use
+    private Column[] columns;
+    private Map<String, Integer> indices;
+    private List<String> columnNames;
+    private List<String> primaryKeys;
+    private List<String> foreignKeys;
+
+    public RSMeta(Connection connection, ResultSet resultSet, MetaCache metaCache) {
         try {
             this.dbMeta = connection.getMetaData();
             this.rsMeta = resultSet.getMetaData();
-            this.columnsCache = columnsCache;
+            this.metaCache = metaCache;
         } catch (SQLException e) {
             throw newSQLRuntimeException(e);
         }
     }
 
-    private List<Column> getColumns() {
-        List<Column> columns = new ArrayList<>();
-        try {
-            for (int col = 1; col <= rsMeta.getColumnCount(); col++) {
-                columns.add(getColumn(col));
+    private Column[] getColumns() {
+        if (columns == null) {
+            try {
+                int columnCount = rsMeta.getColumnCount();
+                Column[] columns = new Column[columnCount];
+                Map<String, Integer> indices = new HashMap<>(columnCount * 4 / 3 + 1);
+                for (int col = 1; col <= columnCount; col++) {
+                    columns[col - 1] = getColumnDescriptor(col);
+                    if (columns[col - 1].name != null) {
+                        indices.putIfAbsent(columns[col - 1].name.toLowerCase(Locale.ROOT), col - 1); // first one wins as for linear lookup
+                    }
+                }
+                this.indices = indices;
+                this.columns = columns;
+            } catch (SQLException e) {
+                throw newSQLRuntimeException(e);
             }
-        } catch (SQLException e) {
-            throw newSQLRuntimeException(e);
         }
         return columns;
     }
 
-    String getCatalog(Column c) {
-        return c.ownTable.catalog;
-    }
-
-    String getSchema(Column c) {
-        return c.ownTable.schema;
+    private Column getColumnDescriptor(int columnIndex) throws SQLException {
+        Class<?> javaType;
+        try {
+            javaType = Class.forName(rsMeta.getColumnClassName(columnIndex), false, ClassLoader.getSystemClassLoader());
+        } catch (ClassNotFoundException e) {
+            javaType = Object.class;
+        }
+        return new Column(
+                new MetaCache.Table(rsMeta.getCatalogName(columnIndex), rsMeta.getSchemaName(columnIndex), rsMeta.getTableName(columnIndex)),
+                rsMeta.getColumnName(columnIndex),
+                rsMeta.isNullable(columnIndex) == ResultSetMetaData.columnNullable,
+                MetaCache.toSQLType(rsMeta.getColumnType(columnIndex)),
+                javaType
+        );
     }
 
-    String getTable(Column c) {
-        return c.ownTable.name;
+    @Nullable
+    private MetaCache.Column tableColumn(Column c) {
+        if (c.table.name == null || c.table.name.isEmpty() || c.name == null) {
+            return null; // an expression - not a table column
+        }
+        return metaCache.get(dbMeta, c.table).column(c.name);
     }
 
-    String getName(Column c) {
-        return c.name;
+    private boolean isPrimaryKey(Column c) {
+        MetaCache.Column column = tableColumn(c);
+        return column != null && column.pk;
     }
 
-    boolean isPrimaryKey(Column c) {
-        return isPrimaryKey(c.ownTable, c.name);
+    private boolean isForeignKey(Column c) {
+        MetaCache.Column column = tableColumn(c);
+        return column != null && column.isForeignKey();
     }
 
-    boolean isForeignKey(Column c) {
-        return isForeignKey(c.ownTable, c.name);
+    private Optional<String> referencedTable(Column c) {
+        MetaCache.Column column = tableColumn(c);
+        return ofNullable(column == null ? null : column.refTable).map(MetaCache.Table::toString);
     }
 
-    boolean isNullable(Column c) {
-        return isNullable(c.ownTable, c.name);
+    /**
+     * @return the only table columns of this result set belong to or null if there are several ones (or none)
+     */
+    @Nullable
+    MetaCache.Table getTable() {
+        MetaCache.Table table = null;
+        for (Column c : getColumns()) {
+            if (c.table.name == null || c.table.name.isEmpty()) continue; // an expression
+            if (table == null) {
+                table = c.table;
+            } else if (!table.equals(c.table)) {
+                return null;
+            }
+        }
+        return table;
     }
 
-    SQLType getSQLType(Column c) {
-        return getSQLType(c.ownTable, c.name);
+    /**
+     * @param table a table to get metadata of
+     * @return cached metadata of provided table
+     */
+    MetaCache.TableMeta getTableMeta(MetaCache.Table table) {
+        return metaCache.get(dbMeta, table);
     }
 
     @Override
@@ -138,7 +164,28 @@ final class RSMeta implements Metadata {
     @Nonnull
     @Override
     public List<String> getColumnNames() {
-        return getColumns().stream().map(c -> c.name).collect(toList());
+        if (columnNames == null) {
+            columnNames = unmodifiableList(Arrays.stream(getColumns()).map(c -> c.name).collect(toList()));
+        }
+        return columnNames;
+    }
+
+    @Nonnull
+    @Override
+    public List<String> getPrimaryKeys() {
+        if (primaryKeys == null) {
+            primaryKeys = unmodifiableList(Arrays.stream(getColumns()).filter(this::isPrimaryKey).map(c -> c.name).collect(toList()));
+        }
+        return primaryKeys;
+    }
+
+    @Nonnull
+    @Override
+    public List<String> getForeignKeys() {
+        if (foreignKeys == null) {
+            foreignKeys = unmodifiableList(Arrays.stream(getColumns()).filter(this::isForeignKey).map(c -> c.name).collect(toList()));
+        }
+        return foreignKeys;
     }
 
     @Override
@@ -163,24 +210,24 @@ final class RSMeta implements Metadata {
 
     @Override
     public boolean isNullable(int columnIndex) {
-        return isNullable(getColumn(columnIndex));
+        return getColumn(columnIndex).nullable;
     }
 
     @Override
     public boolean isNullable(String columnName) {
-        return getColumn(requireNonNull(columnName, "Column name must be provided")).map(this::isNullable).orElse(false);
+        return getColumn(requireNonNull(columnName, "Column name must be provided")).map(c -> c.nullable).orElse(false);
     }
 
     @Nonnull
     @Override
     public SQLType getSQLType(int columnIndex) {
-        return getSQLType(getColumn(columnIndex));
+        return getColumn(columnIndex).sqlType;
     }
 
     @Nonnull
     @Override
     public SQLType getSQLType(String columnName) {
-        return getColumn(requireNonNull(columnName, "Column name must be provided")).map(this::getSQLType).orElse(JDBCType.OTHER);
+        return getColumn(requireNonNull(columnName, "Column name must be provided")).map(c -> c.sqlType).orElse(JDBCType.OTHER);
     }
 
     @Nonnull
@@ -199,156 +246,30 @@ final class RSMeta implements Metadata {
     @Nonnull
     @Override
     public Optional<String> referencedTable(int columnIndex) {
-        Column c = getColumn(columnIndex);
-        return ofNullable(!isForeignKey(columnIndex) ? null : c.refTable.toString());
+        return referencedTable(getColumn(columnIndex));
     }
 
     @Nonnull
     @Override
     public Optional<String> referencedTable(@Nullable String columnName) {
-        return getColumn(columnName).filter(this::isForeignKey).map(c -> c.refTable.toString());
-    }
-
-    private boolean isPrimaryKey(Table table, String column) {
-        return getColumn(table.catalog, table.schema, table.name, column, c -> {
-            if (c.pk == null) {
-                c.pk = rsStream(dbMeta.getPrimaryKeys(table.catalog, table.schema, table.name), rs -> rs.getString("COLUMN_NAME")).anyMatch(name -> name.equalsIgnoreCase(column));
-            }
-        }).pk;
-    }
-
-    private boolean isForeignKey(Table table, String column) {
-        return getColumn(table.catalog, table.schema, table.name, column, c -> {
-            if (c.fk == null) {
-                c.fk = rsStream(dbMeta.getImportedKeys(table.catalog, table.schema, table.name), rs -> {
-                    Map<String, String> map = new HashMap<>();
-                    map.put("PKTABLE_CAT", rs.getString("PKTABLE_CAT"));
-                    map.put("PKTABLE_SCHEM", rs.getString("PKTABLE_SCHEM"));
-                    map.put("PKTABLE_NAME", rs.getString("PKTABLE_NAME"));
-                    map.put("PKCOLUMN_NAME", rs.getString("PKCOLUMN_NAME"));
-                    map.put("FKCOLUMN_NAME", rs.getString("FKCOLUMN_NAME"));
-                    return map;
-                })
-                        .filter(map -> map.getOrDefault("FKCOLUMN_NAME", "").equalsIgnoreCase(column))
-                        .findFirst()
-                        .map(map -> {
-                            c.fk = true;
-                            c.refTable = new Table();
-                            c.refTable.catalog = map.get("PKTABLE_CAT");
-                            c.refTable.schema = map.get("PKTABLE_SCHEM");
-                            c.refTable.name = map.get("PKTABLE_NAME");
-                            return c.fk;
-                        }).orElse(false);
-            }
-        }).fk;
-    }
-
-    private boolean isNullable(Table table, String column) {
-        return isNullable(table.catalog, table.schema, table.name, column);
-    }
-
-    private boolean isNullable(String catalog, String schema, String table, String column) {
-        return getColumn(catalog, schema, table, column, c -> {
-            if (c.nullable == null) {
-                c.nullable = rsStream(dbMeta.getColumns(catalog, schema, table, column), rs -> rs.getInt("NULLABLE")).anyMatch(mode -> mode == DatabaseMetaData.columnNullable);
-            }
-        }).nullable;
-    }
-
-    private SQLType getSQLType(Table table, String column) {
-        return getSQLType(table.catalog, table.schema, table.name, column);
-    }
-
-    private SQLType getSQLType(String catalog, String schema, String table, String column) {
-        return getColumn(catalog, schema, table, column, c -> {
-            if (c.sqlType == null) {
-                c.sqlType = JDBCType.valueOf(rsStream(dbMeta.getColumns(catalog, schema, table, column), rs -> rs.getInt("DATA_TYPE")).findFirst().orElse(Types.OTHER));
-            }
-        }).sqlType;
-    }
-
-    private Column getColumn(int columnIndex, @Nullable TryConsumer<Column, Exception> enricher) {
-        try {
-            return getColumn(rsMeta.getCatalogName(columnIndex), rsMeta.getSchemaName(columnIndex), rsMeta.getTableName(columnIndex), rsMeta.getColumnName(columnIndex), c -> {
-                if (c.nullable == null) {
-                    c.nullable = rsMeta.isNullable(columnIndex) == ResultSetMetaData.columnNullable;
-                }
-                if (c.sqlType == null) {
-                    c.sqlType = JDBCType.valueOf(rsMeta.getColumnType(columnIndex));
-                }
-                if (c.javaType == null) {
-                    c.javaType = Class.forName(rsMeta.getColumnClassName(columnIndex), false, ClassLoader.getSystemClassLoader());
-                }
-                fromEnricher(enricher).accept(c);
-            });
-        } catch (SQLException e) {
-            throw newSQLRuntimeException(e);
-        }
+        return getColumn(columnName).flatMap(this::referencedTable);
     }
 
     private Column getColumn(int columnIndex) {
-        try {
-            return getColumn(rsMeta.getCatalogName(columnIndex), rsMeta.getSchemaName(columnIndex), rsMeta.getTableName(columnIndex), rsMeta.getColumnName(columnIndex), c -> {
-                if (c.nullable == null) {
-                    c.nullable = rsMeta.isNullable(columnIndex) == ResultSetMetaData.columnNullable;
-                }
-                if (c.sqlType == null) {
-                    c.sqlType = JDBCType.valueOf(rsMeta.getColumnType(columnIndex));
-                }
-                if (c.javaType == null) {
-                    c.javaType = Class.forName(rsMeta.getColumnClassName(columnIndex), false, ClassLoader.getSystemClassLoader());
-                }
-            });
-        } catch (SQLException e) {
-            throw newSQLRuntimeException(e);
+        Column[] columns = getColumns();
+        if (columnIndex < 1 || columnIndex > columns.length) {
+            throw newSQLRuntimeException(new SQLException(format("Invalid column index: %s", columnIndex)));
         }
+        return columns[columnIndex - 1];
     }
 
     private Optional<Column> getColumn(@Nullable String columnName) {
-        return null == columnName || columnName.isEmpty() ? Optional.empty() : getColumns().stream().filter(c -> c.name.equalsIgnoreCase(columnName)).findFirst();
-    }
-
-    private Column getColumn(Table table, String column, @Nullable TryConsumer<Column, Exception> enricher) {
-        return getColumn(table.catalog, table.schema, table.name, column, enricher);
-    }
-
-    @ParametersAreNullableByDefault
-    private Column getColumn(String catalog, String schema, String table, String column, TryConsumer<Column, Exception> enricher) {
-        return columnsCache.compute(
-                format(
-                        "%s%s%s%s",
-                        catalog == null || catalog.isEmpty() ? "" : "." + catalog,
-                        schema == null || schema.isEmpty() ? "" : "." + schema,
-                        table == null || table.isEmpty() ? "" : "." + table,
-                        column == null || column.isEmpty() ? "" : "." + column
-                ),
-                (k, v) -> {
-                    if (v == null) {
-                        v = new Column();
-                        v.ownTable = new Table();
-                        v.ownTable.catalog = catalog;
-                        v.ownTable.schema = schema;
-                        v.ownTable.name = table;
-                        v.name = column;
-                    }
-                    fromEnricher(enricher).accept(v);
-                    return v;
-                }
-        );
-    }
-
-    private Consumer<Column> fromEnricher(@Nullable TryConsumer<Column, Exception> enricher) {
-        return c -> {
-            if (enricher != null) {
-                try {
-                    enricher.accept(c);
-                } catch (SQLException e) {
-                    throw newSQLRuntimeException(e);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        };
+        if (null == columnName || columnName.isEmpty()) {
+            return Optional.empty();
+        }
+        Column[] columns = getColumns();
+        Integer index = indices.get(columnName.toLowerCase(Locale.ROOT));
+        return index == null ? Optional.empty() : Optional.of(columns[index]);
     }
 
 }
@@ -0,0 +1,421 @@
+/*
+ * Copyright 2016- Anatoly Kutyakov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package buckelieg.jdbc;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.*;
+import java.sql.Date;
+import java.util.*;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compact type-tagged binary encoding of default-mapped rows
+ * <br/>Column labels are not written for every row: each distinct set of labels is registered once and rows refer to it by its number
+ * <br/>Small large objects are written inline while the bigger ones are streamed in chunks to a separate temporary file which rows refer to
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+final class RowCodec implements AutoCloseable {
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte SHORT = 4;
+    private static final byte BYTE = 5;
+    private static final byte TRUE = 6;
+    private static final byte FALSE = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte FLOAT = 9;
+    private static final byte BIG_DECIMAL = 10;
+    private static final byte BIG_INTEGER = 11;
+    private static final byte DATE = 12;
+    private static final byte TIME = 13;
+    private static final byte TIMESTAMP = 14;
+    private static final byte BYTES = 15;
+    private static final byte BLOB = 16;
+    private static final byte CLOB = 17;
+    private static final byte SERIALIZED = 18;
+    private static final byte BLOB_REF = 19;
+    private static final byte CLOB_REF = 20;
+
+    private static final int INLINE_LOB_SIZE = Lobs.BUFFER_SIZE * 8; // in bytes
+
+    private final List<String[]> schemas = new ArrayList<>();
+    private String[] lastSchema;
+    private int lastSchemaId = -1;
+    private ByteBuffer buffer = ByteBuffer.allocate(Lobs.BUFFER_SIZE);
+    private FileChannel lobs; // created on demand
+    private long lobsSize;
+    private ByteBuffer chunk;
+
+    /**
+     * Encodes provided row
+     *
+     * @param row a row to encode
+     * @return a buffer which is ready to be read from. It is reused by subsequent calls
+     * @throws IOException in case of value can not be encoded
+     */
+    ByteBuffer encode(Map<String, Object> row) throws IOException, SQLException {
+        buffer.clear();
+        putInt(schemaOf(row));
+        for (Object value : row.values()) {
+            write(value);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Decodes a row from provided buffer which position is advanced to the end of the row
+     * <br/>Large object values are returned as views of either the provided buffer or the memory-mapped large objects file
+     *
+     * @param input a buffer to read row from
+     * @return decoded row
+     */
+    Map<String, Object> decode(ByteBuffer input) throws IOException {
+        String[] labels = schemas.get(input.getInt());
+        Map<String, Object> row = new LinkedHashMap<>(max(16, labels.length * 4 / 3 + 1));
+        for (String label : labels) {
+            row.put(label, read(input));
+        }
+        return row;
+    }
+
+    /**
+     * Estimates heap footprint of provided row (object headers, references and value payloads)
+     *
+     * @param row a row to estimate
+     * @return approximate number of bytes retained by the row
+     */
+    static long sizeOf(Map<String, Object> row) {
+        long size = 64 + 16L * row.size(); // map itself with its table
+        for (Object value : row.values()) {
+            size += 32 + sizeOf(value); // map entry
+        }
+        return size;
+    }
+
+    private static long sizeOf(@Nullable Object value) {
+        if (value == null) return 0;
+        if (value instanceof String) return 40 + 2L * ((String) value).length();
+        if (value instanceof byte[]) return 16 + ((byte[]) value).length;
+        if (value instanceof BigDecimal || value instanceof BigInteger) return 64;
+        if (value instanceof java.util.Date) return 32;
+        if (value instanceof Lobs.BufferBlob) return 32 + ((Lobs.BufferBlob) value).heapSize();
+        if (value instanceof Lobs.BufferClob) return 32 + ((Lobs.BufferClob) value).heapSize();
+        return 24;
+    }
+
+    private int schemaOf(Map<String, Object> row) {
+        if (lastSchema != null && lastSchema.length == row.size()) {
+            int i = 0;
+            boolean same = true;
+            for (String label : row.keySet()) {
+                if (!Objects.equals(label, lastSchema[i++])) {
+                    same = false;
+                    break;
+                }
+            }
+            if (same) return lastSchemaId;
+        }
+        String[] labels = row.keySet().toArray(new String[0]);
+        for (int i = 0; i < schemas.size(); i++) {
+            if (Arrays.equals(labels, schemas.get(i))) {
+                return remember(labels, i);
+            }
+        }
+        schemas.add(labels);
+        return remember(labels, schemas.size() - 1);
+    }
+
+    private int remember(String[] schema, int id) {
+        lastSchema = schema;
+        lastSchemaId = id;
+        return id;
+    }
+
+    private void write(@Nullable Object value) throws IOException, SQLException {
+        if (value == null) {
+            putByte(NULL);
+        } else if (value instanceof String) {
+            putByte(STRING);
+            putBytes(((String) value).getBytes(UTF_8));
+        } else if (value instanceof Integer) {
+            putByte(INTEGER);
+            putInt((Integer) value);
+        } else if (value instanceof Long) {
+            putByte(LONG);
+            ensure(8).putLong((Long) value);
+        } else if (value instanceof Short) {
+            putByte(SHORT);
+            ensure(2).putShort((Short) value);
+        } else if (value instanceof Byte) {
+            putByte(BYTE);
+            putByte((Byte) value);
+        } else if (value instanceof Boolean) {
+            putByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            putByte(DOUBLE);
+            ensure(8).putDouble((Double) value);
+        } else if (value instanceof Float) {
+            putByte(FLOAT);
+            ensure(4).putFloat((Float) value);
+        } else if (value instanceof BigDecimal) {
+            putByte(BIG_DECIMAL);
+            putInt(((BigDecimal) value).scale());
+            putBytes(((BigDecimal) value).unscaledValue().toByteArray());
+        } else if (value instanceof BigInteger) {
+            putByte(BIG_INTEGER);
+            putBytes(((BigInteger) value).toByteArray());
+        } else if (value.getClass() == Date.class) {
+            putByte(DATE);
+            ensure(8).putLong(((Date) value).getTime());
+        } else if (value.getClass() == Time.class) {
+            putByte(TIME);
+            ensure(8).putLong(((Time) value).getTime());
+        } else if (value.getClass() == Timestamp.class) {
+            putByte(TIMESTAMP);
+            ensure(12).putLong(((Timestamp) value).getTime()).putInt(((Timestamp) value).getNanos());
+        } else if (value instanceof byte[]) {
+            putByte(BYTES);
+            putBytes((byte[]) value);
+        } else if (value instanceof Blob) {
+            Blob blob = (Blob) value;
+            long length = blob.length();
+            try (InputStream input = blob.getBinaryStream()) {
+                if (length <= INLINE_LOB_SIZE) {
+                    putByte(BLOB);
+                    ensure(8).putLong(length);
+                    putStream(input, (int) length);
+                } else {
+                    putByte(BLOB_REF);
+                    ensure(16).putLong(lobsSize).putLong(length);
+                    append(input, length);
+                }
+            }
+        } else if (value instanceof Clob) {
+            Clob clob = (Clob) value;
+            long length = clob.length();
+            try (Reader reader = clob.getCharacterStream()) {
+                if (length * 2 <= INLINE_LOB_SIZE) {
+                    putByte(CLOB);
+                    ensure(8).putLong(length);
+                    putReader(reader, (int) length);
+                } else {
+                    putByte(CLOB_REF);
+                    ensure(16).putLong(lobsSize).putLong(length * 2);
+                    append(reader, length);
+                }
+            }
+        } else if (value instanceof Serializable) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+                oos.writeObject(value);
+            }
+            putByte(SERIALIZED);
+            putBytes(bos.toByteArray());
+        } else {
+            throw new NotSerializableException(format("Value of type '%s' can not be encoded", value.getClass().getName()));
+        }
+    }
+
+    private Object read(ByteBuffer input) throws IOException {
+        byte tag = input.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return new String(getBytes(input), UTF_8);
+            case INTEGER:
+                return input.getInt();
+            case LONG:
+                return input.getLong();
+            case SHORT:
+                return input.getShort();
+            case BYTE:
+                return input.get();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case DOUBLE:
+                return input.getDouble();
+            case FLOAT:
+                return input.getFloat();
+            case BIG_DECIMAL:
+                int scale = input.getInt();
+                return new BigDecimal(new BigInteger(getBytes(input)), scale);
+            case BIG_INTEGER:
+                return new BigInteger(getBytes(input));
+            case DATE:
+                return new Date(input.getLong());
+            case TIME:
+                return new Time(input.getLong());
+            case TIMESTAMP:
+                Timestamp timestamp = new Timestamp(input.getLong());
+                timestamp.setNanos(input.getInt());
+                return timestamp;
+            case BYTES:
+                return getBytes(input);
+            case BLOB:
+                return new Lobs.BufferBlob(slice(input, (int) input.getLong()));
+            case CLOB:
+                return new Lobs.BufferClob(slice(input, (int) input.getLong() * 2).asCharBuffer());
+            case BLOB_REF:
+                return new Lobs.BufferBlob(map(input.getLong(), input.getLong()));
+            case CLOB_REF:
+                return new Lobs.BufferClob(map(input.getLong(), input.getLong()).asCharBuffer());
+            case SERIALIZED:
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(getBytes(input)))) {
+                    return ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new InvalidClassException(e.getMessage());
+                }
+            default:
+                throw new StreamCorruptedException(format("Unknown value tag: %s", tag));
+        }
+    }
+
+    // mapping outlives the channel
+    private ByteBuffer map(long position, long size) throws IOException {
+        return lobs.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    private static ByteBuffer slice(ByteBuffer input, int length) {
+        ByteBuffer slice = input.slice();
+        slice.limit(length);
+        input.position(input.position() + length);
+        return slice;
+    }
+
+    private static byte[] getBytes(ByteBuffer input) {
+        byte[] bytes = new byte[input.getInt()];
+        input.get(bytes);
+        return bytes;
+    }
+
+    private ByteBuffer ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+        return buffer;
+    }
+
+    private void putByte(byte value) {
+        ensure(1).put(value);
+    }
+
+    private void putInt(int value) {
+        ensure(4).putInt(value);
+    }
+
+    private void putBytes(byte[] bytes) {
+        ensure(4 + bytes.length).putInt(bytes.length).put(bytes);
+    }
+
+    private void putStream(InputStream input, int length) throws IOException {
+        ensure(length);
+        for (int count, left = length; left > 0; left -= count) {
+            if ((count = input.read(buffer.array(), buffer.arrayOffset() + buffer.position(), left)) < 0) {
+                throw new EOFException(format("Large object is shorter than its declared length of %s", length));
+            }
+            buffer.position(buffer.position() + count);
+        }
+    }
+
+    private void putReader(Reader reader, int length) throws IOException {
+        CharBuffer chars = ensure(length * 2).asCharBuffer();
+        char[] cbuf = new char[min(length, Lobs.BUFFER_SIZE)];
+        for (int count, left = length; left > 0; left -= count) {
+            if ((count = reader.read(cbuf, 0, min(left, cbuf.length))) < 0) {
+                throw new EOFException(format("Large object is shorter than its declared length of %s", length));
+            }
+            chars.put(cbuf, 0, count);
+        }
+        buffer.position(buffer.position() + length * 2);
+    }
+
+    private void append(InputStream input, long length) throws IOException, SQLException {
+        ByteBuffer bytes = chunk(length);
+        for (long left = length; left > 0; ) {
+            int count = input.read(bytes.array(), 0, (int) min(left, bytes.capacity()));
+            if (count < 0) {
+                throw new EOFException(format("Large object is shorter than its declared length of %s", length));
+            }
+            bytes.clear().limit(count);
+            writeLobs(bytes);
+            left -= count;
+        }
+    }
+
+    private void append(Reader reader, long length) throws IOException, SQLException {
+        ByteBuffer bytes = chunk(length * 2);
+        CharBuffer chars = bytes.asCharBuffer();
+        char[] cbuf = new char[chars.capacity()];
+        for (long left = length; left > 0; ) {
+            int count = reader.read(cbuf, 0, (int) min(left, cbuf.length));
+            if (count < 0) {
+                throw new EOFException(format("Large object is shorter than its declared length of %s", length));
+            }
+            chars.clear();
+            chars.put(cbuf, 0, count);
+            bytes.clear().limit(count * 2);
+            writeLobs(bytes);
+            left -= count;
+        }
+    }
+
+    private ByteBuffer chunk(long size) throws IOException, SQLException {
+        if (size > Integer.MAX_VALUE) {
+            throw new SQLException(format("Large object of %s bytes exceeds maximum mappable size", size));
+        }
+        if (lobs == null) {
+            lobs = Lobs.newSpillChannel();
+            chunk = ByteBuffer.allocate(Lobs.BUFFER_SIZE * 8);
+        }
+        return (ByteBuffer) chunk.clear();
+    }
+
+    private void writeLobs(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            lobsSize += lobs.write(bytes, lobsSize);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (lobs != null) {
+            lobs.close();
+        }
+    }
+
+}
@@ -26,8 +26,8 @@ import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -54,8 +54,8 @@ final class ScriptQuery<T extends Map.Entry<String, ?>> implements Script {
     private final TrySupplier<Connection, SQLException> connectionSupplier;
     private final List<T> params;
     private String query;
-    private final ExecutorService conveyor;
-    private final ConcurrentMap<String, RSMeta.Column> metaCache;
+    private final Executor conveyor;
+    private final MetaCache metaCache;
     private int timeout;
     private TimeUnit unit = TimeUnit.SECONDS;
     private Consumer<String> logger;
@@ -74,7 +74,7 @@ final class ScriptQuery<T extends Map.Entry<String, ?>> implements Script {
      * @param script     an arbitrary SQL script to execute
      * @throws IllegalArgumentException in case of corrupted script (like illegal comment lines encountered)
      */
-    ScriptQuery(Lock lock, Condition condition, ExecutorService conveyor, ConcurrentMap<String, RSMeta.Column> metaCache, TrySupplier<Connection, SQLException> connectionSupplier, String script, @Nullable Iterable<T> namedParams) {
+    ScriptQuery(Lock lock, Condition condition, Executor conveyor, MetaCache metaCache, TrySupplier<Connection, SQLException> connectionSupplier, String script, @Nullable Iterable<T> namedParams) {
         this.lock = lock;
         this.condition = condition;
         this.conveyor = conveyor;
@@ -99,7 +99,9 @@ final class ScriptQuery<T extends Map.Entry<String, ?>> implements Script {
                 return doExecute();
             } else {
                 try {
-                    return conveyor.submit(this::doExecute).get(timeout, unit);
+                    FutureTask<Long> task = new FutureTask<>(this::doExecute);
+                    conveyor.execute(task);
+                    return task.get(timeout, unit);
                 } catch (Exception e) {
                     throw new SQLException(e);
                 }
@@ -114,16 +116,16 @@ final class ScriptQuery<T extends Map.Entry<String, ?>> implements Script {
     private long doExecute() throws SQLException {
         return doInTransaction(false, connectionSupplier, null, conn -> {
             long start = currentTimeMillis();
-            for (String query : script.split(STATEMENT_DELIMITER)) {
+            for (String query : SqlLexer.split(script)) {
                 try {
                     if (isAnonymous(query)) {
-                        executeQuery(new QueryImpl(lock, condition, conveyor, () -> conn, query));
+                        executeQuery(new QueryImpl(lock, condition, conveyor, metaCache, () -> conn, query));
                     } else {
                         Map.Entry<String, Object[]> preparedQuery = prepareQuery(query, params);
                         if (isProcedure(preparedQuery.getKey())) {
                             new StoredProcedureQuery(lock, condition, true, conveyor, metaCache, () -> conn, null, preparedQuery.getKey(), stream(preparedQuery.getValue()).map(p -> p instanceof P ? (P<?>) p : P.in(p)).toArray(P[]::new)).skipWarnings(skipWarnings).print(this::log).call();
                         } else {
-                            executeQuery(new QueryImpl(lock, condition, conveyor, () -> conn, preparedQuery.getKey(), preparedQuery.getValue()));
+                            executeQuery(new QueryImpl(lock, condition, conveyor, metaCache, () -> conn, preparedQuery.getKey(), preparedQuery.getValue()));
                         }
                     }
                 } catch (Exception e) {
@@ -119,6 +119,21 @@ public interface Select extends Query {
         @Nonnull
         ForInsert<T> onInserted(Consumer<T> handler);
 
+        /**
+         * Batched inserted items event handler (executes in a separate thread)
+         * <br/>Items are delivered in the order they were inserted, in lists of up to provided size
+         * <br/>Items are held until the changes are committed, so the handler never observes the changes which are rolled back
+         * <br/>Delivery queue is bounded: the action is slowed down if the handler can not keep up
+         *
+         * @param batchSize maximum number of items per handler invocation
+         * @param handler   a handler to be invoked with the lists of inserted items
+         * @return an abstraction for <code>INSERT</code> action being performed on {@link ResultSet} object
+         * @throws NullPointerException     if provided handler is null
+         * @throws IllegalArgumentException if provided batch size is not positive
+         */
+        @Nonnull
+        ForInsert<T> onInserted(int batchSize, Consumer<List<T>> handler);
+
         /**
          * @param logger item {@link String} representation consumer
          * @return an abstraction for <code>INSERT</code> action being performed on {@link ResultSet} object
@@ -137,6 +152,20 @@ public interface Select extends Query {
         default ForInsert<T> verbose() {
             return verbose(System.out::println);
         }
+
+        /**
+         * Switches this action to set-based execution: column values set by the inserter are not inserted via updatable cursor
+         * but with batched prepared <code>INSERT INTO table(provided columns) VALUES(...)</code> statements
+         * <br/>Items are grouped by the set of provided columns, every group is executed as soon as it reaches provided size
+         * <br/>The select itself is not re-executed: resulting stream consists of inserted items only
+         * <br/>Selected columns must belong to a single table
+         *
+         * @param size maximum number of rows inserted by a single batch
+         * @return an abstraction for <code>INSERT</code> action being performed on {@link ResultSet} object
+         * @throws IllegalArgumentException if provided size is not positive
+         */
+        @Nonnull
+        ForInsert<T> batch(int size);
     }
 
     /**
@@ -214,6 +243,21 @@ public interface Select extends Query {
         @Nonnull
         ForUpdate<T> onUpdated(BiConsumer<T, T> handler);
 
+        /**
+         * Batched updated items event handler (executes in a separate thread)
+         * <br/>Items are delivered in the order they were updated, in lists of up to provided size
+         * <br/>Items are held until the changes are committed, so the handler never observes the changes which are rolled back
+         * <br/>Delivery queue is bounded: the action is slowed down if the handler can not keep up
+         *
+         * @param batchSize maximum number of items per handler invocation
+         * @param handler   a handler to be invoked with the lists of updated items
+         * @return an abstraction for <code>UPDATE</code> action being performed on {@link ResultSet} object
+         * @throws NullPointerException     if provided handler is null
+         * @throws IllegalArgumentException if provided batch size is not positive
+         */
+        @Nonnull
+        ForUpdate<T> onUpdated(int batchSize, Consumer<List<T>> handler);
+
         /**
          * @param logger item {@link String} representation consumer
          * @return an abstraction for <code>UPDATE</code> action being performed on {@link ResultSet} object
@@ -233,6 +277,34 @@ public interface Select extends Query {
             return verbose(System.out::println);
         }
 
+        /**
+         * Switches this action to set-based execution: changed columns are not updated via updatable cursor
+         * but with batched <code>UPDATE ... SET changed columns WHERE pk = ?</code> statements
+         * <br/>Rows are grouped by the set of their changed columns, every group is executed as soon as it reaches provided size
+         * <br/>The rest of the groups is executed when resulting stream is exhausted or closed
+         * <br/>Selected rows must contain all the primary key columns of a single table
+         *
+         * @param size maximum number of rows updated by a single batch
+         * @return an abstraction for <code>UPDATE</code> action being performed on {@link ResultSet} object
+         * @throws IllegalArgumentException if provided size is not positive
+         */
+        @Nonnull
+        ForUpdate<T> batch(int size);
+
+        /**
+         * Commits changes periodically instead of holding a single transaction for the whole scan
+         * <br/>Cursor is opened with {@link ResultSet#HOLD_CURSORS_OVER_COMMIT} holdability and changes are committed after every provided number of changed rows
+         * <br/>Note that already committed chunks are not rolled back if the scan fails afterwards
+         * <br/>This option is ignored if the action is performed within a transaction or if the driver can not hold cursors over commit:
+         * all the changes are committed at once on completion then
+         *
+         * @param rows number of changed rows to commit
+         * @return an abstraction for <code>UPDATE</code> action being performed on {@link ResultSet} object
+         * @throws IllegalArgumentException if provided number is not positive
+         */
+        @Nonnull
+        ForUpdate<T> commitEvery(int rows);
+
     }
 
     /**
@@ -300,6 +372,21 @@ public interface Select extends Query {
         @Nonnull
         ForDelete<T> onDeleted(Consumer<T> handler);
 
+        /**
+         * Batched deleted items event handler (executes in a separate thread)
+         * <br/>Items are delivered in the order they were deleted, in lists of up to provided size
+         * <br/>Items are held until the changes are committed, so the handler never observes the changes which are rolled back
+         * <br/>Delivery queue is bounded: the action is slowed down if the handler can not keep up
+         *
+         * @param batchSize maximum number of items per handler invocation
+         * @param handler   a handler to be invoked with the lists of deleted items
+         * @return an abstraction for <code>DELETE</code> action being performed on {@link ResultSet} object
+         * @throws NullPointerException     if provided handler is null
+         * @throws IllegalArgumentException if provided batch size is not positive
+         */
+        @Nonnull
+        ForDelete<T> onDeleted(int batchSize, Consumer<List<T>> handler);
+
         /**
          * @param logger item {@link String} representation consumer
          * @return an abstraction for <code>DELETE</code> action being performed on {@link ResultSet} object
@@ -319,6 +406,33 @@ public interface Select extends Query {
             return verbose(System.out::println);
         }
 
+        /**
+         * Switches this action to set-based execution: matched rows are not deleted via updatable cursor
+         * but by their primary keys with <code>DELETE ... WHERE pk IN (...)</code> statements issued for every chunk of provided size
+         * <br/>Selected rows must contain all the primary key columns of a single table
+         * <br/>The last (incomplete) chunk is deleted when resulting stream is exhausted or closed
+         *
+         * @param size maximum number of rows deleted by a single statement
+         * @return an abstraction for <code>DELETE</code> action being performed on {@link ResultSet} object
+         * @throws IllegalArgumentException if provided size is not positive
+         */
+        @Nonnull
+        ForDelete<T> batch(int size);
+
+        /**
+         * Commits changes periodically instead of holding a single transaction for the whole scan
+         * <br/>Cursor is opened with {@link ResultSet#HOLD_CURSORS_OVER_COMMIT} holdability and changes are committed after every provided number of changed rows
+         * <br/>Note that already committed chunks are not rolled back if the scan fails afterwards
+         * <br/>This option is ignored if the action is performed within a transaction or if the driver can not hold cursors over commit:
+         * all the changes are committed at once on completion then
+         *
+         * @param rows number of changed rows to commit
+         * @return an abstraction for <code>DELETE</code> action being performed on {@link ResultSet} object
+         * @throws IllegalArgumentException if provided number is not positive
+         */
+        @Nonnull
+        ForDelete<T> commitEvery(int rows);
+
     }
 
     /**
@@ -658,6 +772,112 @@ public interface Select extends Query {
         return execute().collect(toList());
     }
 
+    /**
+     * Filters rows of this SELECT statement result on the cursor level: rejected rows are skipped before any mapping takes place
+     * <br/>Intended for the conditions that can not be expressed in SQL. Prefer <code>WHERE</code> clause whenever possible
+     * <br/>Subsequent calls are combined with logical <code>AND</code>
+     *
+     * @param predicate a {@link ResultSet} predicate which is evaluated on each row
+     * @return select query abstraction
+     * @throws NullPointerException if predicate is null
+     */
+    @Nonnull
+    Select where(TryPredicate<ResultSet, SQLException> predicate);
+
+    /**
+     * Restricts default mapper to provided columns only: values of other columns are not read at all
+     * <br/>Prefer listing columns in the query itself. This is for the cases when query text is not under control (<code>SELECT *</code> views etc.)
+     *
+     * @param columns labels of the columns to read (case insensitive)
+     * @return select query abstraction
+     * @throws NullPointerException if columns or any of them is null
+     */
+    @Nonnull
+    Select columns(String... columns);
+
+    /**
+     * Tells default mapper to produce lazy rows: column value is read from the cursor on first access only
+     * <br/>Lazy row is read-only. It is readable while the cursor is positioned on it, i.e. until next row is fetched
+     * <br/>Afterwards the row retains only those columns which were accessed in time
+     * <br/>Thus lazy rows suit stream processing (<code>filter</code>, <code>map</code>, <code>forEach</code> etc.) and should not be collected as is
+     *
+     * @param lazy whether rows should be lazy
+     * @return select query abstraction
+     */
+    @Nonnull
+    Select lazy(boolean lazy);
+
+    /**
+     * Tells default mapper to produce lazy rows
+     *
+     * @return select query abstraction
+     * @see #lazy(boolean)
+     */
+    @Nonnull
+    default Select lazy() {
+        return lazy(true);
+    }
+
+    /**
+     * Tells default mapper to deduplicate values of provided columns: equal values share the same instance
+     * <br/>Applies to immutable values only: {@link String}, {@link java.math.BigDecimal} and {@link java.math.BigInteger}
+     * <br/>Useful for low cardinality columns (status codes, country codes etc.) of large results retained in memory
+     * <br/>Every column has its own dictionary per result set, which is dropped as soon as provided size limit is exceeded
+     * or most of the values turn out to be distinct
+     *
+     * @param maxDictionarySize maximum number of distinct values to keep per column
+     * @param columns           labels of the columns to deduplicate (case insensitive). If none provided - all columns are deduplicated
+     * @return select query abstraction
+     * @throws IllegalArgumentException if dictionary size is not positive
+     */
+    @Nonnull
+    Select deduplicate(int maxDictionarySize, String... columns);
+
+    /**
+     * Tells default mapper to deduplicate values of provided columns with dictionaries of up to <code>1024</code> distinct values
+     *
+     * @param columns labels of the columns to deduplicate (case insensitive). If none provided - all columns are deduplicated
+     * @return select query abstraction
+     * @see #deduplicate(int, String...)
+     */
+    @Nonnull
+    default Select deduplicate(String... columns) {
+        return deduplicate(1024, columns);
+    }
+
+    /**
+     * Executes this SELECT statement draining the whole result with default mapper into re-iterable detached container
+     * <br/>Rows are kept on the heap while their estimated size fits into provided budget
+     * <br/>The rest of rows is written in a compact binary form into a temporary file which is memory-mapped on iteration
+     * <br/>Returned object must be closed to release the temporary file
+     *
+     * @param memoryBudget maximum number of bytes the rows may occupy on the heap
+     * @return materialized result
+     * @throws IllegalArgumentException if memory budget is negative
+     * @throws SQLRuntimeException      as a wrapper for {@link SQLException} or in case rows can not be spilled
+     * @see #execute()
+     * @see Materialized
+     */
+    @Nonnull
+    Materialized materialize(long memoryBudget);
+
+    /**
+     * Executes this SELECT statement returning default-mapped rows in the order defined by provided comparator
+     * <br/>Useful whenever ordering can not be pushed down to the database with <code>ORDER BY</code> clause
+     * <br/>Rows are sorted in runs which fit into provided memory budget, runs are spilled into temporary files and then merged
+     * <br/>The sort is stable and starts as soon as terminal operation is invoked on returned stream
+     * <br/>Returned stream should be closed in order to release temporary files
+     *
+     * @param comparator   rows comparator
+     * @param memoryBudget maximum number of bytes a sorted run may occupy on the heap
+     * @return a {@link Stream} of sorted {@link Map}s
+     * @throws NullPointerException     if comparator is null
+     * @throws IllegalArgumentException if memory budget is negative
+     * @see #execute()
+     */
+    @Nonnull
+    Stream<Map<String, Object>> sorted(Comparator<? super Map<String, Object>> comparator, long memoryBudget);
+
     /**
      * Configures {@link java.sql.Statement} fetch size parameter
      *
@@ -689,6 +909,37 @@ public interface Select extends Query {
     @Nonnull
     Select maxRows(long max);
 
+    /**
+     * Tells default mapper to read large objects (<code>BLOB</code>, <code>CLOB</code>, <code>LONGVARBINARY</code>, <code>LONGVARCHAR</code> etc.) as {@link java.sql.Blob} or {@link java.sql.Clob} values
+     * <br/>Values which length exceeds provided threshold are spilled into a temporary file which is then memory-mapped for reading
+     * <br/>Thus large values do not occupy the heap and remain readable after the cursor is closed
+     * <br/>Obtained values are read-only. The temporary file is removed from the file system right after it is mapped,
+     * while the mapping itself is released by the garbage collector once the value is no longer referenced (<code>free()</code> just drops the value's reference to it)
+     *
+     * @param spillThreshold maximum length of in-memory value: bytes for binary objects and characters for character ones
+     * @return select query abstraction
+     * @throws IllegalArgumentException if threshold is negative
+     * @see java.sql.Blob
+     * @see java.sql.Clob
+     */
+    @Nonnull
+    Select lobs(long spillThreshold);
+
+    /**
+     * Adds optimizer hint to this query
+     * <br/>All the hints are put into a single <code>/*+ ... *&#47;</code> comment which is placed where the database expects it:
+     * in front of the query for PostgreSQL (<code>pg_hint_plan</code>) and right after the first <code>SELECT</code> keyword otherwise (Oracle, MySQL etc.)
+     * <br/>For a query with a leading <code>WITH</code> clause hints go to the main query rather than to the common table expressions
+     * <br/>Hints are rendered by {@link #asSQL()} and {@link #print()} too (right after the first <code>SELECT</code> keyword until the query is executed)
+     * <br/>Hints are not applied to stored procedure calls
+     *
+     * @param hint hint text without comment markers, e.g. <code>INDEX(t t_name_idx)</code>
+     * @return select query abstraction
+     * @throws IllegalArgumentException if hint is blank or contains comment markers
+     */
+    @Nonnull
+    Select hint(String hint);
+
     /**
      * {@inheritDoc}
      */
@@ -742,6 +993,32 @@ public interface Select extends Query {
         return print(System.out::println);
     }
 
+    /**
+     * Performs an action for each row of this SELECT statement result via typed {@link Cursor}
+     * <br/>The same cursor instance is passed for every row. Its column handles are resolved once per result set
+     * and read values by column index without boxing primitives
+     *
+     * <p>This is a terminal operation
+     *
+     * @param action an action to perform on the rows
+     * @throws NullPointerException if action is null
+     * @see Cursor
+     */
+    void forEachRow(TryConsumer<Cursor, SQLException> action);
+
+    /**
+     * Performs an action for each row of this SELECT statement result via typed {@link Cursor} with column handles resolved once per result set
+     * <br/>Provided setup function is called before the first row of every result set: it is the place to obtain column handles
+     * and to return the row action which uses them
+     *
+     * <p>This is a terminal operation
+     *
+     * @param setup a function which takes a cursor positioned at the first row of a result set and returns an action to perform on each of its rows
+     * @throws NullPointerException if setup is null or it returns null
+     * @see Cursor
+     */
+    void forEachResultSet(TryFunction<Cursor, TryConsumer<Cursor, SQLException>, SQLException> setup);
+
     /**
      * Performs an action for each element of this stream
      *
@@ -15,19 +15,21 @@
  */
 package buckelieg.jdbc;
 
+import buckelieg.jdbc.Utils.DefaultMapper;
 import buckelieg.jdbc.fn.*;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.annotation.concurrent.NotThreadSafe;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
 import java.sql.*;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.*;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -36,22 +38,33 @@ import java.util.function.Consumer;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import static buckelieg.jdbc.Utils.newSQLRuntimeException;
 import static buckelieg.jdbc.Utils.setStatementParameters;
+import static buckelieg.jdbc.Utils.wrap;
+import static java.lang.String.format;
 import static java.lang.Math.max;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 import static java.util.stream.Stream.empty;
 
+@SuppressWarnings("unchecked")
 @NotThreadSafe
 @ParametersAreNonnullByDefault
 class SelectQuery extends AbstractQuery<Statement> implements Iterable<ResultSet>, Iterator<ResultSet>, Spliterator<ResultSet>, Select {
 
     abstract static class SelectForInsert<T> implements Select.ForInsert<T> {
         protected Consumer<T> insertedHandler;
+        protected Consumer<List<T>> insertedBatchHandler;
+        protected int eventBatchSize;
         protected Consumer<String> logger;
+        protected int batchSize;
+        private EventPipeline<T> insertedEvents;
+        private EventPipeline<T> insertedBatches;
 
         @Nonnull
         @Override
@@ -67,12 +80,53 @@ class SelectQuery extends AbstractQuery<Statement> implements Iterable<ResultSet
             return this;
         }
 
+        @Nonnull
+        @Override
+        public Select.ForInsert<T> onInserted(int batchSize, Consumer<List<T>> handler) {
+            this.eventBatchSize = eventBatchSize(batchSize);
+            this.insertedBatchHandler = requireNonNull(handler, "Inserted handler must be provided");
+            return this;
+        }
+
+        final void openEvents(SelectQuery query) {
+            insertedEvents = query.pipeline(insertedHandler == null ? null : rows -> rows.forEach(insertedHandler), 1, false);
+            insertedBatches = query.pipeline(insertedBatchHandler, eventBatchSize, true);
+        }
+
+        final void inserted(T row) {
+            if (insertedEvents != null) {
+                insertedEvents.publish(row);
+            }
+            if (insertedBatches != null) {
+                insertedBatches.publish(row);
+            }
+            if (logger != null) {
+                logger.accept(row.toString());
+            }
+        }
+
+        @Nonnull
+        @Override
+        public Select.ForInsert<T> batch(int size) {
+            if (size < 1) {
+                throw new IllegalArgumentException("Batch size must be positive");
+            }
+            this.batchSize = size;
+            return this;
+        }
+
     }
 
     abstract static class SelectForUpdate<T> implements Select.ForUpdate<T> {
 
         protected Consumer<String> logger;
         protected BiConsumer<T, T> updatedHandler;
+        protected Consumer<List<T>> updatedBatchHandler;
+        protected int eventBatchSize;
+        protected int batchSize;
+        protected int commitEvery;
+        private EventPipeline<Map.Entry<T, T>> updatedEvents;
+        private EventPipeline<T> updatedBatches;
 
         @Override
         @Nonnull
@@ -81,18 +135,69 @@ class SelectQuery extends AbstractQuery<Statement> implements Iterable<ResultSet
             return this;
         }
 
+        @Override
+        @Nonnull
+        public Select.ForUpdate<T> onUpdated(int batchSize, Consumer<List<T>> handler) {
+            this.eventBatchSize = eventBatchSize(batchSize);
+            this.updatedBatchHandler = requireNonNull(handler, "Updated handler must be provided");
+            return this;
+        }
+
+        final void openEvents(SelectQuery query) {
+            updatedEvents = query.pipeline(updatedHandler == null ? null : rows -> rows.forEach(e -> updatedHandler.accept(e.getKey(), e.getValue())), 1, false);
+            updatedBatches = query.pipeline(updatedBatchHandler, eventBatchSize, true);
+        }
+
+        final void updated(T oldRow, T newRow) {
+            if (updatedEvents != null) {
+                updatedEvents.publish(new SimpleImmutableEntry<>(oldRow, newRow));
+            }
+            if (updatedBatches != null) {
+                updatedBatches.publish(newRow);
+            }
+            if (logger != null) {
+                logger.accept(newRow.toString());
+            }
+        }
+
         @Nonnull
         @Override
         public Select.ForUpdate<T> verbose(Consumer<String> logger) {
             this.logger = requireNonNull(logger, "Logger must be provided");
             return this;
         }
+
+        @Nonnull
+        @Override
+        public Select.ForUpdate<T> batch(int size) {
+            if (size < 1) {
+                throw new IllegalArgumentException("Batch size must be positive");
+            }
+            this.batchSize = size;
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public Select.ForUpdate<T> commitEvery(int rows) {
+            if (rows < 1) {
+                throw new IllegalArgumentException("Number of rows must be positive");
+            }
+            this.commitEvery = rows;
+            return this;
+        }
     }
 
     abstract static class SelectForDelete<T> implements Select.ForDelete<T> {
         static TryBiFunction<Map<String, Object>, Metadata, Map<String, Object>, SQLException> defaultKeyExtractor = (row, meta) -> row.keySet().stream().filter(meta::isPrimaryKey).map(pk -> new SimpleImmutableEntry<>(pk.toLowerCase(), row.get(pk))).collect(toMap(Map.Entry::getKey, Map.Entry::getValue));
         protected Consumer<T> deletedHandler;
+        protected Consumer<List<T>> deletedBatchHandler;
+        protected int eventBatchSize;
         protected Consumer<String> logger;
+        protected int batchSize;
+        protected int commitEvery;
+        private EventPipeline<T> deletedEvents;
+        private EventPipeline<T> deletedBatches;
 
         @Nonnull
         @Override
@@ -101,28 +206,94 @@ class SelectQuery extends AbstractQuery<Statement> implements Iterable<ResultSet
             return this;
         }
 
+        @Nonnull
+        @Override
+        public Select.ForDelete<T> batch(int size) {
+            if (size < 1) {
+                throw new IllegalArgumentException("Batch size must be positive");
+            }
+            this.batchSize = size;
+            return this;
+        }
+
+        @Nonnull
+        @Override
+        public Select.ForDelete<T> commitEvery(int rows) {
+            if (rows < 1) {
+                throw new IllegalArgumentException("Number of rows must be positive");
+            }
+            this.commitEvery = rows;
+            return this;
+        }
+
         @Nonnull
         @Override
         public Select.ForDelete<T> onDeleted(Consumer<T> handler) {
             this.deletedHandler = requireNonNull(handler, "Deleted handler must be provided");
             return this;
         }
+
+        @Nonnull
+        @Override
+        public Select.ForDelete<T> onDeleted(int batchSize, Consumer<List<T>> handler) {
+            this.eventBatchSize = eventBatchSize(batchSize);
+            this.deletedBatchHandler = requireNonNull(handler, "Deleted handler must be provided");
+            return this;
+        }
+
+        final void openEvents(SelectQuery query) {
+            deletedEvents = query.pipeline(deletedHandler == null ? null : rows -> rows.forEach(deletedHandler), 1, false);
+            deletedBatches = query.pipeline(deletedBatchHandler, eventBatchSize, true);
+        }
+
+        final void deleted(T row) {
+            if (deletedEvents != null) {
+                deletedEvents.publish(row);
+            }
+            if (deletedBatches != null) {
+                deletedBatches.publish(row);
+            }
+            if (logger != null) {
+                logger.accept(row.toString());
+            }
+        }
     }
 
-    protected final ConcurrentMap<String, RSMeta.Column> metaCache;
+    private static int eventBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        return batchSize;
+    }
+
+    protected final MetaCache metaCache;
     protected int currentResultSetNumber = 1;
     ResultSet rs;
     ResultSet wrapper;
     private boolean isMutable;
+    private int commitInterval;
+    private int uncommitted;
+    private final List<EventPipeline<?>> heldEvents = new ArrayList<>(1);
+    @Nullable
+    List<EventPipeline<?>> transactionEvents; // events held until the enclosing transaction ends
+    private TryRunnable<SQLException> onClosing;
     private boolean hasNext;
     private boolean hasMoved;
     private int fetchSize;
     private int maxRowsInt = -1;
     private long maxRowsLong = -1L;
+    private long lobSpillThreshold = -1L;
+    private final List<String> hints = new ArrayList<>(1);
+    private boolean leadingHints; // hints placement is known once connected
+    private Set<String> deduplicated;
+    private int maxDictionarySize;
+    private Set<String> projection;
+    private boolean lazy;
+    private TryPredicate<ResultSet, SQLException> filter;
     private final Map<String, String> columnNamesMappings = new HashMap<>();
     protected final AtomicReference<Metadata> meta = new AtomicReference<>();
 
-    SelectQuery(Lock lock, Condition condition, boolean isTransactionRunning, Executor conveyor, ConcurrentMap<String, RSMeta.Column> metaCache, TrySupplier<Connection, SQLException> connectionSupplier, @Nullable TryRunnable<SQLException> onCompleted, String query, Object... params) {
+    SelectQuery(Lock lock, Condition condition, boolean isTransactionRunning, Executor conveyor, MetaCache metaCache, TrySupplier<Connection, SQLException> connectionSupplier, @Nullable TryRunnable<SQLException> onCompleted, String query, Object... params) {
         super(lock, condition, isTransactionRunning, conveyor, connectionSupplier, onCompleted, query, params);
         this.metaCache = metaCache;
     }
@@ -147,7 +318,17 @@ class SelectQuery extends AbstractQuery<Statement> implements Iterable<ResultSet
     }
 
     protected boolean doHasNext() {
-        return jdbcTry(() -> rs != null && rs.next());
+        return jdbcTry(() -> {
+            if (filter == null) {
+                return rs != null && rs.next();
+            }
+            while (rs != null && rs.next()) {
+                if (filter.test(wrapper)) {
+                    return true;
+                }
+            }
+            return false;
+        });
     }
 
     @Override
@@ -178,6 +359,10 @@ class SelectQuery extends AbstractQuery<Statement> implements Iterable<ResultSet
             private Stream<T> doExecute(Collection<T> toInsert, boolean onlyInserted) throws SQLException {
                 requireNonNull(toInsert, "Insert collection must be provided");
                 if (onlyInserted && toInsert.isEmpty()) return empty();
+                openEvents(SelectQuery.this);
+                if (batchSize > 0) {
+                    return doBatchInsert(toInsert);
+                }
                 isMutable = true;
                 statement = SelectQuery.this.prepareStatement();
                 SelectQuery.this.doExecute();
@@ -186,20 +371,44 @@ class SelectQuery extends AbstractQuery<Statement> implements Iterable<ResultSet
                 rs.moveToInsertRow();
                 List<T> inserted = toInsert.stream().filter(row -> doInsert(row, meta)).collect(toList());
                 rs.close();
+                commitEvents();
                 return onlyInserted ? inserted.stream() : SelectQuery.this.execute(mapper);
             }
 
+            private Stream<T> doBatchInsert(Collection<T> toInsert) throws SQLException {
+                List<T> inserted = new ArrayList<>(toInsert.size());
+                try {
+                    statement = SelectQuery.this.prepareStatement();
+                    statement.setMaxRows(1); // the select is executed for the sake of its metadata only
+                    SelectQuery.this.doExecute();
+                    RSMeta meta = new RSMeta(connectionInUse, rs, metaCache);
+                    TableWriter writer = tableWriter(meta, batchSize, false);
+                    Map<String, Object> values = new LinkedHashMap<>();
+                    ResultSet recorder = recordingResultSet(meta, values);
+                    for (T row : toInsert) {
+                        inserter.accept(row, recorder, meta);
+                        if (values.isEmpty()) {
+                            continue;
+                        }
+                        inserted.add(row);
+                        writer.insert(new LinkedHashMap<>(values), () -> inserted(row));
+                        values.clear();
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    onClosing = null; // buffered inserts are discarded
+                    SelectQuery.this.close();
+                    throw e;
+                }
+                SelectQuery.this.close(); // applies the rest of the inserts
+                return inserted.stream();
+            }
+
             private boolean doInsert(T row, Metadata meta) {
                 return jdbcTry(() -> {
                     inserter.accept(row, wrapper, meta);
                     if (((MutableResultSet) wrapper).updated) {
                         rs.insertRow();
-                        if (insertedHandler != null) {
-                            conveyor.execute(() -> insertedHandler.accept(row));
-                        }
-                        if (logger != null) {
-                            logger.accept(row.toString());
-                        }
+                        inserted(row);
                         ((MutableResultSet) wrapper).updated = false;
                         return true;
                     }
@@ -231,16 +440,18 @@ class SelectQuery extends AbstractQuery<Statement> implements Iterable<ResultSet
             @Override
             public boolean single(T item) {
                 requireNonNull(item, "Deleted item must be provided");
-                isMutable = true;
-                return doDelete(SelectQuery.this.execute(mapper), logger, deletedHandler, singletonList(item), keyExtractor, true).count() == 1;
+                isMutable = batchSize == 0;
+                commitInterval = commitEvery;
+                return doDelete(SelectQuery.this.execute(mapper), this, singletonList(item), keyExtractor, true).count() == 1;
             }
 
             @Nonnull
             @Override
             public Stream<T> execute(Collection<T> toDelete) {
                 requireNonNull(toDelete, "Delete collection must be provided");
-                isMutable = true;
-                return doDelete(SelectQuery.this.execute(mapper), logger, deletedHandler, toDelete, keyExtractor, false);
+                isMutable = batchSize == 0;
+                commitInterval = commitEvery;
+                return doDelete(SelectQuery.this.execute(mapper), this, toDelete, keyExtractor, false);
             }
         };
     }
@@ -252,65 +463,114 @@ class SelectQuery extends AbstractQuery<Statement> implements Iterable<ResultSet
             @Override
             public boolean single(Map<String, Object> item) {
                 requireNonNull(item, "Deleted item must be provided");
-                isMutable = true;
-                return doDelete(SelectQuery.this.execute(), logger, deletedHandler, singletonList(item), defaultKeyExtractor, true).count() == 1;
+                isMutable = batchSize == 0;
+                commitInterval = commitEvery;
+                return doDelete(SelectQuery.this.execute(), this, singletonList(item), defaultKeyExtractor, true).count() == 1;
             }
 
             @Nonnull
             @Override
             public Stream<Map<String, Object>> execute(Collection<Map<String, Object>> toDelete) {
                 requireNonNull(toDelete, "Delete collection must be provided");
-                isMutable = true;
-                return doDelete(SelectQuery.this.execute(), logger, deletedHandler, toDelete, defaultKeyExtractor, false);
+                isMutable = batchSize == 0;
+                commitInterval = commitEvery;
+                return doDelete(SelectQuery.this.execute(), this, toDelete, defaultKeyExtractor, false);
             }
         };
     }
 
-    private <T> Stream<T> doDelete(Stream<T> stream, @Nullable Consumer<String> logger, @Nullable Consumer<T> deletedHandler, Collection<T> toDelete, TryBiFunction<T, Metadata, ?, SQLException> keyExtractor, boolean deletedOnly) {
+    private <T> Stream<T> doDelete(Stream<T> stream, SelectForDelete<T> action, Collection<T> toDelete, TryBiFunction<T, Metadata, ?, SQLException> keyExtractor, boolean deletedOnly) {
         if (toDelete.isEmpty() && deletedOnly) {
             stream.close();
             return empty();
         }
-        List<T> excluded = new ArrayList<>(toDelete.size());
-        AtomicBoolean isRemovable = new AtomicBoolean(true);
-        Metadata meta = new RSMeta(connectionInUse, rs, metaCache);
-        return toDelete.isEmpty() ? stream : stream.filter(row -> jdbcTry(() -> {
-            Iterator<T> it = toDelete.iterator();
-            while (it.hasNext()) {
-                T deleted = it.next();
-                if (!excluded.contains(deleted)) {
-                    Object pkOld = keyExtractor.apply(row, meta);
-                    Object pkNew = keyExtractor.apply(deleted, meta);
-                    if (pkOld.equals(pkNew)) {
-                        excluded.add(deleted);
-                        rs.deleteRow();
-                        if (isRemovable.get()) {
-                            try {
-                                it.remove();
-                            } catch (UnsupportedOperationException e) {
-                                isRemovable.set(false); // no more tries to remove elements from the source collection
-                            }
-                        }
-                        if (deletedHandler != null) {
-                            conveyor.execute(() -> deletedHandler.accept(row));
-                        }
-                        if (logger != null) {
-                            logger.accept(row.toString());
-                        }
-                        return deletedOnly;
-                    }
-                }
+        if (toDelete.isEmpty()) {
+            return stream;
+        }
+        RSMeta meta = new RSMeta(connectionInUse, rs, metaCache);
+        Map<Object, Deque<T>> index = new HashMap<>(toDelete.size() * 4 / 3 + 1);
+        TableWriter writer;
+        try {
+            writer = action.batchSize > 0 ? tableWriter(meta, action.batchSize, true) : null;
+            action.openEvents(this);
+            for (T deleted : toDelete) {
+                Object key = keyExtractor.apply(deleted, meta);
+                index.computeIfAbsent(key, k -> new ArrayDeque<>(1)).add(deleted);
             }
-            return !deletedOnly;
+        } catch (SQLException e) {
+            stream.close();
+            throw newSQLRuntimeException(e);
+        } catch (RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+        return stream.filter(row -> jdbcTry(() -> {
+            Object key = keyExtractor.apply(row, meta);
+            Deque<T> candidates = index.get(key);
+            if (candidates == null) {
+                return !deletedOnly;
+            }
+            candidates.poll(); // each item deletes a single row
+            if (candidates.isEmpty()) {
+                index.remove(key);
+            }
+            TryRunnable<SQLException> onDeleted = () -> {
+                action.deleted(row);
+                changed();
+            };
+            if (writer == null) {
+                rs.deleteRow();
+                onDeleted.run();
+            } else {
+                writer.delete(rs, onDeleted);
+            }
+            return deletedOnly;
         }));
     }
 
+    /**
+     * Set-based update mode: column updates are recorded into provided map rather than applied to the cursor
+     */
+    private ResultSet recordingResultSet(Metadata meta, Map<String, Object> changes) {
+        return wrap(new ImmutableResultSet(rs), ResultSet.class, (source, proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("update") && !name.equals("updateRow") && args != null && args.length > 0) {
+                if (args.length > 1 && (args[1] instanceof InputStream || args[1] instanceof Reader)) {
+                    throw new SQLFeatureNotSupportedException(format("Streamed values are not supported by set-based update: %s", name));
+                }
+                String column = args[0] instanceof Integer ? meta.getColumnNames().get((Integer) args[0] - 1) : meta.getColumnNames().stream().filter(((String) args[0])::equalsIgnoreCase).findFirst().orElse((String) args[0]);
+                changes.put(column, args.length > 1 ? args[1] : null);
+                return null;
+            }
+            try {
+                return method.invoke(source, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    private TableWriter tableWriter(RSMeta meta, int batchSize, boolean keyed) throws SQLException {
+        TableWriter writer = TableWriter.of(connectionInUse, meta, batchSize);
+        if (writer == null) {
+            throw new SQLException("Set-based actions require the columns of a single table to be selected");
+        }
+        if (keyed && !writer.isKeyed()) {
+            throw new SQLException("Set-based actions require all the primary key columns of a single table to be selected");
+        }
+        onClosing = writer::flush; // the rest of the changes is applied when the stream is exhausted or closed
+        return writer;
+    }
+
     @Nonnull
     @Override
     public <T> ForUpdate<T> forUpdate(TryFunction<ResultSet, T, SQLException> mapper, TryQuadConsumer<T, T, ResultSet, Metadata, SQLException> updater) {
         requireNonNull(updater, "Updater must be provided");
         return new SelectForUpdate<T>() {
 
+            private final Map<String, Object> changes = new LinkedHashMap<>();
+            private TableWriter writer;
+
             @Override
             public boolean single(T item) {
                 return doExecute(singletonList(requireNonNull(item, "Updated item must be provided")), true).count() == 1;
@@ -325,41 +585,47 @@ class SelectQuery extends AbstractQuery<Statement> implements Iterable<ResultSet
             private Stream<T> doExecute(Collection<T> toUpdate, boolean onlyUpdated) {
                 requireNonNull(toUpdate, "Update collection must be provided");
                 if (onlyUpdated && toUpdate.isEmpty()) return empty();
-                List<T> exclude = new ArrayList<>(toUpdate.size());
-                isMutable = true;
-                AtomicBoolean isRemovable = new AtomicBoolean(true);
+                List<T> pending = new LinkedList<>(toUpdate); // items which have not updated any row yet
+                isMutable = batchSize == 0;
+                commitInterval = commitEvery;
                 Stream<T> stream = SelectQuery.this.execute(mapper);
-                wrapper = new MutableResultSet(rs);
-                Metadata meta = new RSMeta(connectionInUse, rs, metaCache);
-                return toUpdate.isEmpty() ? stream : onlyUpdated ? stream.filter(row -> doUpdate(row, exclude, toUpdate, isRemovable, meta).isPresent()) : stream.map(row -> doUpdate(row, exclude, toUpdate, isRemovable, meta).orElse(row));
+                RSMeta meta = new RSMeta(connectionInUse, rs, metaCache);
+                if (batchSize == 0) {
+                    wrapper = new MutableResultSet(rs);
+                } else {
+                    try {
+                        writer = tableWriter(meta, batchSize, true);
+                    } catch (SQLException e) {
+                        stream.close();
+                        throw newSQLRuntimeException(e);
+                    }
+                    wrapper = recordingResultSet(meta, changes);
+                }
+                openEvents(SelectQuery.this);
+                return toUpdate.isEmpty() ? stream : onlyUpdated ? stream.filter(row -> doUpdate(row, pending, meta).isPresent()) : stream.map(row -> doUpdate(row, pending, meta).orElse(row));
             }
 
-            private Optional<T> doUpdate(T row, Collection<T> exclude, Collection<T> toUpdate, AtomicBoolean isRemovable, Metadata meta) {
+            private Optional<T> doUpdate(T row, List<T> pending, Metadata meta) {
                 return ofNullable(jdbcTry(() -> {
-                    Iterator<T> it = toUpdate.iterator();
+                    Iterator<T> it = pending.iterator();
                     while (it.hasNext()) {
                         T updated = it.next();
-                        if (!exclude.contains(updated)) {
-                            updater.accept(row, updated, wrapper, meta);
-                            if (((MutableResultSet) wrapper).updated) {
+                        updater.accept(row, updated, wrapper, meta);
+                        if (writer == null ? ((MutableResultSet) wrapper).updated : !changes.isEmpty()) {
+                            it.remove();
+                            TryRunnable<SQLException> onUpdated = () -> {
+                                updated(row, updated);
+                                changed();
+                            };
+                            if (writer == null) {
                                 rs.updateRow();
                                 ((MutableResultSet) wrapper).updated = false;
-                                exclude.add(updated);
-                                if (isRemovable.get()) {
-                                    try {
-                                        it.remove();
-                                    } catch (UnsupportedOperationException e) {
-                                        isRemovable.set(false); // no more tries to remove elements from the source collection
-                                    }
-                                }
-                                if (updatedHandler != null) {
-                                    conveyor.execute(() -> updatedHandler.accept(row, updated));
-                                }
-                                if (logger != null) {
-                                    logger.accept(updated.toString());
-                                }
-                                return updated;
+                                onUpdated.run();
+                            } else {
+                                writer.update(rs, new LinkedHashMap<>(changes), onUpdated);
+                                changes.clear();
                             }
+                            return updated;
                         }
                     }
                     return null;
@@ -372,6 +638,8 @@ class SelectQuery extends AbstractQuery<Statement> implements Iterable<ResultSet
     @Override
     public ForUpdate<Map<String, Object>> forUpdate() {
         return new SelectForUpdate<Map<String, Object>>() {
+
+            private TableWriter writer;
             @Override
             public boolean single(Map<String, Object> item) {
                 return doExecute(singletonList(requireNonNull(item, "Updated item must be provided")), true).count() == 1;
@@ -386,55 +654,111 @@ class SelectQuery extends AbstractQuery<Statement> implements Iterable<ResultSet
             private Stream<Map<String, Object>> doExecute(Collection<Map<String, Object>> toUpdate, boolean onlyUpdated) {
                 requireNonNull(toUpdate, "Update collection must be provided");
                 if (onlyUpdated && toUpdate.isEmpty()) return empty();
-                isMutable = true;
+                isMutable = batchSize == 0;
+                commitInterval = commitEvery;
                 Stream<Map<String, Object>> stream = SelectQuery.this.execute();
-                Metadata meta = new RSMeta(connectionInUse, rs, metaCache);
-                return toUpdate.isEmpty() ? stream : onlyUpdated ? stream.filter(row -> doUpdate(row, toUpdate, meta).isPresent()) : stream.map(row -> doUpdate(row, toUpdate, meta).orElse(row));
-            }
-
-            private Optional<Map<String, Object>> doUpdate(Map<String, Object> row, Collection<Map<String, Object>> toUpdate, Metadata meta) {
-                return toUpdate.stream()
-                        .filter(upd -> {
-                            boolean accepted = true;
-                            for (Map.Entry<String, Object> e : upd.entrySet()) {
-                                if (meta.isPrimaryKey(e.getKey())) {
-                                    Object oldKey = row.get(getColumnName(e.getKey(), meta));
-                                    accepted &= oldKey != null && oldKey.equals(e.getValue());
-                                }
-                            }
-                            return accepted;
-                        })
-                        .map(updated -> jdbcTry(() -> {
-                            Map<String, Object> newRow = new LinkedHashMap<>(row);
-                            boolean needsUpdate = false;
-                            for (String colName : meta.getColumnNames().stream().filter(col -> !meta.isPrimaryKey(col)).collect(toList())) {
-                                Object newValue = updated.get(getColumnName(colName, updated));
-                                Object oldValue = row.get(colName);
-                                if (!(oldValue == null && newValue == null) && (newValue != null && !newValue.equals(oldValue))) {
-                                    rs.updateObject(colName, newValue);
-                                    newRow.put(colName, newValue);
-                                    needsUpdate = true;
-                                }
-                            }
-                            if (needsUpdate) {
-                                rs.updateRow();
-                                if (updatedHandler != null) {
-                                    conveyor.execute(() -> updatedHandler.accept(row, newRow));
-                                }
-                                if (logger != null) {
-                                    logger.accept(newRow.toString());
-                                }
-                                return newRow;
-                            }
-                            return null;
-                        }))
-                        .filter(Objects::nonNull)
-                        .findFirst();
+                if (toUpdate.isEmpty()) return stream;
+                RSMeta meta = new RSMeta(connectionInUse, rs, metaCache);
+                openEvents(SelectQuery.this);
+                if (batchSize > 0) {
+                    try {
+                        writer = tableWriter(meta, batchSize, true);
+                    } catch (SQLException e) {
+                        stream.close();
+                        throw newSQLRuntimeException(e);
+                    }
+                }
+                List<Map<String, Object>> items = new ArrayList<>(toUpdate);
+                Set<String> primaryKeys = meta.getPrimaryKeys().stream().map(String::toLowerCase).collect(toSet());
+                Map<Map<String, Object>, List<Integer>> index = new HashMap<>(items.size() * 4 / 3 + 1);
+                List<Integer> partial = new ArrayList<>(); // items without full primary key are tested against every row
+                for (int i = 0; i < items.size(); i++) {
+                    Map<String, Object> key = primaryKey(items.get(i), meta);
+                    if (!primaryKeys.isEmpty() && key.keySet().equals(primaryKeys)) {
+                        index.computeIfAbsent(key, k -> new ArrayList<>(1)).add(i);
+                    } else {
+                        partial.add(i);
+                    }
+                }
+                return onlyUpdated
+                        ? stream.filter(row -> doUpdate(row, items, index, partial, meta).isPresent())
+                        : stream.map(row -> doUpdate(row, items, index, partial, meta).orElse(row));
+            }
+
+            private Optional<Map<String, Object>> doUpdate(Map<String, Object> row, List<Map<String, Object>> items, Map<Map<String, Object>, List<Integer>> index, List<Integer> partial, Metadata meta) {
+                List<Integer> indexed = index.getOrDefault(primaryKey(row, meta), emptyList());
+                int i = 0, j = 0;
+                while (i < indexed.size() || j < partial.size()) { // candidates are tried in the order of the provided collection
+                    boolean isPartial = i >= indexed.size() || (j < partial.size() && partial.get(j) < indexed.get(i));
+                    Map<String, Object> updated = items.get(isPartial ? partial.get(j++) : indexed.get(i++));
+                    if (isPartial && !matches(row, updated, meta)) {
+                        continue;
+                    }
+                    Map<String, Object> newRow = doUpdate(row, updated, meta);
+                    if (newRow != null) {
+                        return Optional.of(newRow);
+                    }
+                }
+                return Optional.empty();
+            }
+
+            private boolean matches(Map<String, Object> row, Map<String, Object> updated, Metadata meta) {
+                boolean accepted = true;
+                for (Map.Entry<String, Object> e : updated.entrySet()) {
+                    if (e.getKey() != null && meta.isPrimaryKey(e.getKey())) {
+                        Object oldKey = row.get(getColumnName(e.getKey(), meta));
+                        accepted &= oldKey != null && oldKey.equals(e.getValue());
+                    }
+                }
+                return accepted;
+            }
+
+            @Nullable
+            private Map<String, Object> doUpdate(Map<String, Object> row, Map<String, Object> updated, Metadata meta) {
+                return jdbcTry(() -> {
+                    Map<String, Object> newRow = new LinkedHashMap<>(row);
+                    Map<String, Object> changes = new LinkedHashMap<>();
+                    for (String colName : meta.getColumnNames().stream().filter(col -> !meta.isPrimaryKey(col)).collect(toList())) {
+                        Object newValue = updated.get(getColumnName(colName, updated));
+                        Object oldValue = row.get(colName);
+                        if (!(oldValue == null && newValue == null) && (newValue != null && !newValue.equals(oldValue))) {
+                            changes.put(colName, newValue);
+                            newRow.put(colName, newValue);
+                        }
+                    }
+                    if (changes.isEmpty()) {
+                        return null;
+                    }
+                    TryRunnable<SQLException> onUpdated = () -> {
+                        updated(row, newRow);
+                        changed();
+                    };
+                    if (writer == null) {
+                        for (Map.Entry<String, Object> change : changes.entrySet()) {
+                            rs.updateObject(change.getKey(), change.getValue());
+                        }
+                        rs.updateRow();
+                        onUpdated.run();
+                    } else {
+                        writer.update(rs, changes, onUpdated); // grouped by the set of changed columns
+                    }
+                    return newRow;
+                });
             }
 
         };
     }
 
+    private static Map<String, Object> primaryKey(Map<String, Object> row, Metadata meta) {
+        Map<String, Object> key = new HashMap<>();
+        for (Map.Entry<String, Object> e : row.entrySet()) {
+            if (e.getKey() != null && meta.isPrimaryKey(e.getKey())) {
+                key.put(e.getKey().toLowerCase(), e.getValue());
+            }
+        }
+        return key;
+    }
+
     @Nonnull
     @Override
     public final <T> Stream<T> execute(TryTriFunction<ResultSet, Integer, Metadata, T, SQLException> mapper) {
@@ -464,8 +788,25 @@ class SelectQuery extends AbstractQuery<Statement> implements Iterable<ResultSet
         });
     }
 
+    @Override
+    public void close() {
+        TryRunnable<SQLException> action = onClosing;
+        onClosing = null;
+        try {
+            if (action != null) {
+                action.run();
+            }
+        } catch (SQLException e) {
+            super.close();
+            commitEvents();
+            throw newSQLRuntimeException(e);
+        }
+        super.close();
+        commitEvents(); // changes made so far are committed on completion (unless within a transaction)
+    }
+
     protected void doExecute() throws SQLException {
-        rs = isPrepared ? ((PreparedStatement) statement).executeQuery() : statement.execute(query) ? statement.getResultSet() : null;
+        rs = isPrepared ? ((PreparedStatement) statement).executeQuery() : statement.execute(hinted()) ? statement.getResultSet() : null;
     }
 
     @Nonnull
@@ -491,6 +832,93 @@ class SelectQuery extends AbstractQuery<Statement> implements Iterable<ResultSet
         return this;
     }
 
+    @Nonnull
+    @Override
+    public final Select lobs(long spillThreshold) {
+        if (spillThreshold < 0) {
+            throw new IllegalArgumentException("Spill threshold must not be negative");
+        }
+        this.lobSpillThreshold = spillThreshold;
+        return this;
+    }
+
+    @Nonnull
+    @Override
+    public final Select hint(String hint) {
+        requireNonNull(hint, "Hint must be provided");
+        if (hint.trim().isEmpty() || hint.contains("/*") || hint.contains("*/")) {
+            throw new IllegalArgumentException(format("Illegal hint '%s'", hint));
+        }
+        hints.add(hint.trim());
+        resetSQL();
+        return this;
+    }
+
+    @Nonnull
+    @Override
+    public Stream<Map<String, Object>> execute() {
+        return execute(newDefaultMapper());
+    }
+
+    @Nonnull
+    @Override
+    public final Select where(TryPredicate<ResultSet, SQLException> predicate) {
+        requireNonNull(predicate, "Predicate must be provided");
+        TryPredicate<ResultSet, SQLException> previous = filter;
+        this.filter = previous == null ? predicate : rs -> previous.test(rs) && predicate.test(rs);
+        return this;
+    }
+
+    @Nonnull
+    @Override
+    public final Select columns(String... columns) {
+        this.projection = Arrays.stream(requireNonNull(columns, "Columns must be provided")).map(col -> requireNonNull(col, "Column name must be provided").toLowerCase(Locale.ROOT)).collect(toSet());
+        return this;
+    }
+
+    @Nonnull
+    @Override
+    public final Select lazy(boolean lazy) {
+        this.lazy = lazy;
+        return this;
+    }
+
+    @Nonnull
+    @Override
+    public final Select deduplicate(int maxDictionarySize, String... columns) {
+        if (maxDictionarySize <= 0) {
+            throw new IllegalArgumentException("Dictionary size must be positive");
+        }
+        this.maxDictionarySize = maxDictionarySize;
+        this.deduplicated = Arrays.stream(requireNonNull(columns, "Columns must be provided")).map(col -> requireNonNull(col, "Column name must be provided").toLowerCase(Locale.ROOT)).collect(toSet());
+        return this;
+    }
+
+    @Nonnull
+    @Override
+    public final Materialized materialize(long memoryBudget) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative");
+        }
+        return MaterializedRows.of(execute(), memoryBudget);
+    }
+
+    @Nonnull
+    @Override
+    public final Stream<Map<String, Object>> sorted(Comparator<? super Map<String, Object>> comparator, long memoryBudget) {
+        requireNonNull(comparator, "Comparator must be provided");
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative");
+        }
+        return ExternalSort.sort(execute(), comparator, memoryBudget);
+    }
+
+    @Nonnull
+    @Override
+    public final Optional<Map<String, Object>> single() {
+        return single(newDefaultMapper());
+    }
+
     @Nonnull
     @Override
     public final Select poolable(boolean poolable) {
@@ -568,9 +996,114 @@ class SelectQuery extends AbstractQuery<Statement> implements Iterable<ResultSet
         }).forEach(nil -> {});
     }
 
+    final TryFunction<ResultSet, Map<String, Object>, SQLException> newDefaultMapper() {
+        return new DefaultMapper().lobs(lobSpillThreshold).deduplicate(deduplicated, maxDictionarySize).columns(projection).lazy(lazy);
+    }
+
+    @Override
+    public final void forEachRow(TryConsumer<Cursor, SQLException> action) {
+        requireNonNull(action, "Action must be provided");
+        forEachResultSet(cursor -> action);
+    }
+
+    @Override
+    public final void forEachResultSet(TryFunction<Cursor, TryConsumer<Cursor, SQLException>, SQLException> setup) {
+        requireNonNull(setup, "Setup must be provided");
+        Cursor cursor = new Cursor();
+        AtomicReference<TryConsumer<Cursor, SQLException>> action = new AtomicReference<>();
+        forEach((wrapper, index, meta) -> {
+            if (cursor.bind(rs, index)) { // raw result set: cursor API is read-only itself
+                action.set(requireNonNull(setup.apply(cursor), "Row action must be provided"));
+            }
+            action.get().accept(cursor);
+        });
+    }
+
     protected Statement prepareStatement() throws SQLException {
         connectionInUse = connectionSupplier.get();
-        return isPrepared ? setStatementParameters(connectionInUse.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, isMutable ? ResultSet.CONCUR_UPDATABLE : ResultSet.CONCUR_READ_ONLY), params) : connectionInUse.createStatement(ResultSet.TYPE_FORWARD_ONLY, isMutable ? ResultSet.CONCUR_UPDATABLE : ResultSet.CONCUR_READ_ONLY);
+        int concurrency = isMutable ? ResultSet.CONCUR_UPDATABLE : ResultSet.CONCUR_READ_ONLY;
+        if (isChunked() && !supportsHoldability()) {
+            commitInterval = 0; // cursor would not survive intermediate commits - fall back to a single commit
+        }
+        if (isChunked()) { // cursor must survive intermediate commits
+            Statement held = isPrepared ? setStatementParameters(connectionInUse.prepareStatement(hinted(), ResultSet.TYPE_FORWARD_ONLY, concurrency, ResultSet.HOLD_CURSORS_OVER_COMMIT), params) : connectionInUse.createStatement(ResultSet.TYPE_FORWARD_ONLY, concurrency, ResultSet.HOLD_CURSORS_OVER_COMMIT);
+            if (!isHoldable(held)) {
+                commitInterval = 0; // driver has silently downgraded holdability
+            }
+            return held;
+        }
+        return isPrepared ? setStatementParameters(connectionInUse.prepareStatement(hinted(), ResultSet.TYPE_FORWARD_ONLY, concurrency), params) : connectionInUse.createStatement(ResultSet.TYPE_FORWARD_ONLY, concurrency);
+    }
+
+    private String hinted() throws SQLException {
+        if (hints.isEmpty()) {
+            return query;
+        }
+        String product = connectionInUse.getMetaData().getDatabaseProductName();
+        boolean leading = product != null && product.toLowerCase().contains("postgres");
+        if (leading != leadingHints) {
+            leadingHints = leading;
+            resetSQL();
+        }
+        return hinted(leading);
+    }
+
+    private String hinted(boolean leading) {
+        return hints.isEmpty() ? query : SqlLexer.hint(query, String.join(" ", hints), leading);
+    }
+
+    @Override
+    StringBuilder render(StringBuilder sql, int maxLength) {
+        return Utils.asSQL(sql, hinted(leadingHints), maxLength, params);
+    }
+
+    private boolean supportsHoldability() {
+        try {
+            return connectionInUse.getMetaData().supportsResultSetHoldability(ResultSet.HOLD_CURSORS_OVER_COMMIT);
+        } catch (SQLException | AbstractMethodError e) {
+            return false;
+        }
+    }
+
+    private static boolean isHoldable(Statement statement) {
+        try {
+            return statement.getResultSetHoldability() == ResultSet.HOLD_CURSORS_OVER_COMMIT;
+        } catch (SQLException | AbstractMethodError e) {
+            return false;
+        }
+    }
+
+    private boolean isChunked() {
+        return commitInterval > 0 && !isTransactionRunning; // an explicit transaction is never split
+    }
+
+    /**
+     * Commits changes made so far as soon as configured number of rows is changed
+     */
+    private void changed() throws SQLException {
+        if (isChunked() && ++uncommitted >= commitInterval) {
+            connectionInUse.commit();
+            uncommitted = 0;
+            commitEvents();
+        }
+    }
+
+    @Nullable
+    private <E> EventPipeline<E> pipeline(@Nullable Consumer<List<E>> handler, int batchSize, boolean held) {
+        if (handler == null) {
+            return null;
+        }
+        EventPipeline<E> pipeline = new EventPipeline<>(conveyor, batchSize, EventPipeline.DEFAULT_CAPACITY, held, handler);
+        if (held) {
+            (isTransactionRunning && transactionEvents != null ? transactionEvents : heldEvents).add(pipeline);
+        }
+        return pipeline;
+    }
+
+    private void commitEvents() {
+        for (EventPipeline<?> pipeline : heldEvents) {
+            pipeline.commit();
+        }
     }
 
     private String getColumnName(String columnName, Metadata meta) {
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016- Anatoly Kutyakov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package buckelieg.jdbc;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static buckelieg.jdbc.Utils.newSQLRuntimeException;
+
+/**
+ * Append-only temporary file of encoded rows which is read back through memory-mapped segments
+ * <br/>Segments are split at row boundaries so that every row is read from a single mapping
+ * <br/>The file is removed from the file system as soon as this spill file is closed
+ *
+ * @see RowCodec
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+final class SpillFile implements Iterable<Map<String, Object>>, AutoCloseable {
+
+    private static final long SEGMENT_SIZE = 64L << 20;
+
+    private final FileChannel channel;
+    private final RowCodec codec = new RowCodec();
+    private final ByteBuffer output = ByteBuffer.allocate(Lobs.BUFFER_SIZE * 8);
+    private final List<Long> segments = new ArrayList<>();
+    private long size;
+    private long rows;
+
+    SpillFile() throws IOException {
+        this.channel = Lobs.newSpillChannel();
+        this.segments.add(0L);
+    }
+
+    void write(Map<String, Object> row) throws IOException, SQLException {
+        ByteBuffer record = codec.encode(row);
+        int length = record.remaining();
+        if (size + 4 + length - segments.get(segments.size() - 1) > SEGMENT_SIZE && size > segments.get(segments.size() - 1)) {
+            segments.add(size);
+        }
+        if (output.remaining() < 4 + length) {
+            flush();
+        }
+        if (output.remaining() < 4 + length) {
+            output.putInt(length).flip();
+            writeFully(output);
+            writeFully(record);
+            output.clear();
+        } else {
+            output.putInt(length).put(record);
+        }
+        size += 4 + length;
+        rows++;
+    }
+
+    void flush() throws IOException {
+        output.flip();
+        writeFully(output);
+        output.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    long rows() {
+        return rows;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Returned iterator maps file segments lazily: at most one segment is referenced by the iterator at a time
+     * <br/>Rows with large objects keep referencing their segment (or the mapped region of the large objects file) via {@link java.sql.Blob}/{@link java.sql.Clob} values
+     *
+     * @return an iterator over rows written so far
+     */
+    @Nonnull
+    @Override
+    public Iterator<Map<String, Object>> iterator() {
+        try {
+            flush();
+        } catch (IOException e) {
+            throw newSQLRuntimeException(e);
+        }
+        long limit = size;
+        return new Iterator<Map<String, Object>>() {
+
+            private int segment;
+            private ByteBuffer mapped;
+
+            @Override
+            public boolean hasNext() {
+                if (mapped != null && mapped.hasRemaining()) return true;
+                return nextSegment() != null;
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    int length = mapped.getInt();
+                    ByteBuffer record = mapped.slice();
+                    record.limit(length);
+                    mapped.position(mapped.position() + length);
+                    return codec.decode(record);
+                } catch (IOException e) {
+                    throw newSQLRuntimeException(e);
+                }
+            }
+
+            private ByteBuffer nextSegment() {
+                while (segment < segments.size()) {
+                    long start = segments.get(segment);
+                    long end = ++segment < segments.size() ? segments.get(segment) : limit;
+                    if (end > start) {
+                        try {
+                            return mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                        } catch (IOException e) {
+                            throw newSQLRuntimeException(e);
+                        }
+                    }
+                }
+                return mapped = null;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        try (RowCodec ignored = codec) {
+            channel.close();
+        } catch (IOException e) {
+            throw newSQLRuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2016- Anatoly Kutyakov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package buckelieg.jdbc;
+
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Single-pass SQL tokenizer
+ * <br/>Recognizes comments (both single line and nested multiline ones), optimizer hints (<code>/*+ ... *&#47;</code>), string literals, quoted identifiers,
+ * positional (<code>?</code>) and named (<code>:name</code>) parameters and statement delimiters.
+ * Everything else is reported as plain text
+ * <br/>Tokens are reported as bounds within the source string, so that no substrings are created while scanning
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+final class SqlLexer {
+
+    enum Token {
+        TEXT,
+        WHITESPACE,
+        COMMENT,
+        HINT,
+        LITERAL,
+        IDENTIFIER,
+        PARAMETER,
+        NAMED_PARAMETER,
+        DELIMITER,
+        END
+    }
+
+    private final String sql;
+    private final int length;
+    private int start;
+    private int end;
+
+    SqlLexer(String sql) {
+        this.sql = sql;
+        this.length = sql.length();
+    }
+
+    /**
+     * @return the start index (inclusive) of the current token
+     */
+    int start() {
+        return start;
+    }
+
+    /**
+     * @return the end index (exclusive) of the current token
+     */
+    int end() {
+        return end;
+    }
+
+    /**
+     * Advances to the next token
+     *
+     * @return the type of the next token or {@link Token#END} if there are no more
+     * @throws SQLRuntimeException if a multiline comment is not closed
+     */
+    Token next() {
+        start = end;
+        if (start >= length) {
+            return Token.END;
+        }
+        char c = sql.charAt(start);
+        char next = start + 1 < length ? sql.charAt(start + 1) : '\0';
+        if (isWhitespace(c)) {
+            end = start + 1;
+            while (end < length && isWhitespace(sql.charAt(end))) end++;
+            return Token.WHITESPACE;
+        }
+        switch (c) {
+            case '\'':
+                end = quoted(start, '\'');
+                return Token.LITERAL;
+            case '"':
+            case '`':
+                end = quoted(start, c);
+                return Token.IDENTIFIER;
+            case '?':
+                end = start + 1;
+                return Token.PARAMETER;
+            case ';':
+                end = start + 1;
+                return Token.DELIMITER;
+            case '-':
+                if (next == '-') {
+                    end = start + 2;
+                    while (end < length && !isLineBreak(sql.charAt(end))) end++;
+                    return Token.COMMENT;
+                }
+                break;
+            case '/':
+                if (next == '*') {
+                    end = blockComment(start);
+                    return start + 2 < length && sql.charAt(start + 2) == '+' ? Token.HINT : Token.COMMENT;
+                }
+                break;
+            case ':':
+                if (next == ':') { // type cast
+                    end = start + 2;
+                    return Token.TEXT;
+                }
+                if (isNameChar(next)) {
+                    end = start + 2;
+                    while (end < length && isNameChar(sql.charAt(end))) end++;
+                    return Token.NAMED_PARAMETER;
+                }
+                break;
+            default:
+                break;
+        }
+        end = start + 1;
+        while (end < length && !isSpecial(sql.charAt(end))) end++;
+        return Token.TEXT;
+    }
+
+    private int quoted(int from, char quote) {
+        int i = from + 1;
+        while (i < length) {
+            if (sql.charAt(i++) == quote) {
+                if (i < length && sql.charAt(i) == quote) {
+                    i++; // escaped quote
+                } else {
+                    return i;
+                }
+            }
+        }
+        return length; // unterminated - up to the end
+    }
+
+    private int blockComment(int from) {
+        int depth = 0;
+        int i = from;
+        while (i < length - 1) {
+            char c = sql.charAt(i);
+            char next = sql.charAt(i + 1);
+            if (c == '/' && next == '*') {
+                depth++;
+                i += 2;
+            } else if (c == '*' && next == '/') {
+                i += 2;
+                if (--depth == 0) {
+                    return i;
+                }
+            } else {
+                i++;
+            }
+        }
+        throw new SQLRuntimeException(format("Unmatched start multiline comment at %s for query:\r\n%s", from, sql), true);
+    }
+
+    private static boolean isSpecial(char c) {
+        switch (c) {
+            case '\'':
+            case '"':
+            case '`':
+            case '?':
+            case ';':
+            case '-':
+            case '/':
+            case ':':
+                return true;
+            default:
+                return isWhitespace(c);
+        }
+    }
+
+    private static boolean isNameChar(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    static boolean isLineBreak(char c) {
+        return c == '\n' || c == '\r' || c == 0x0B || c == '\f' || c == 0x85 || c == 0x2028 || c == 0x2029;
+    }
+
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || isLineBreak(c);
+    }
+
+    /**
+     * Removes all the comments from provided SQL text
+     * <br/>Optimizer hints are retained
+     * <br/>Every run of whitespaces (comments and line breaks included) is collapsed to a single space
+     *
+     * @param sql SQL text
+     * @return SQL text without comments
+     * @throws SQLRuntimeException if multiline comments are unbalanced
+     */
+    static String cutComments(String sql) {
+        StringBuilder result = new StringBuilder(sql.length());
+        SqlLexer lexer = new SqlLexer(sql);
+        boolean space = false; // pending whitespace
+        char whitespace = ' ';
+        int weight = 0;
+        for (Token token = lexer.next(); token != Token.END; token = lexer.next()) {
+            if (token == Token.WHITESPACE || token == Token.COMMENT) {
+                if (token == Token.COMMENT) {
+                    weight += 2;
+                } else {
+                    for (int i = lexer.start; i < lexer.end; i++) {
+                        whitespace = sql.charAt(i);
+                        weight += isLineBreak(whitespace) ? 2 : 1;
+                    }
+                }
+                space = true;
+                continue;
+            }
+            if (space) {
+                result.append(weight > 1 ? ' ' : whitespace);
+                space = false;
+                weight = 0;
+            }
+            if (token == Token.LITERAL || token == Token.IDENTIFIER || token == Token.HINT) {
+                collapse(sql, lexer.start, lexer.end, result);
+            } else {
+                result.append(sql, lexer.start, lexer.end);
+            }
+        }
+        return result.toString().trim();
+    }
+
+    private static void collapse(String sql, int from, int to, StringBuilder result) {
+        int i = from;
+        while (i < to) {
+            char c = sql.charAt(i);
+            if (!isWhitespace(c)) {
+                result.append(c);
+                i++;
+                continue;
+            }
+            int runEnd = i;
+            int weight = 0;
+            while (runEnd < to && isWhitespace(sql.charAt(runEnd))) {
+                weight += isLineBreak(sql.charAt(runEnd++)) ? 2 : 1;
+            }
+            result.append(weight > 1 ? ' ' : c);
+            i = runEnd;
+        }
+    }
+
+    /**
+     * @param sql SQL text
+     * @return true if SQL text contains named parameters outside of literals, quoted identifiers and comments
+     */
+    static boolean hasNamedParameters(String sql) {
+        return contains(sql, Token.NAMED_PARAMETER);
+    }
+
+    /**
+     * @param sql SQL text
+     * @return true if SQL text contains statement delimiters outside of literals, quoted identifiers and comments
+     */
+    static boolean hasDelimiters(String sql) {
+        return contains(sql, Token.DELIMITER);
+    }
+
+    private static boolean contains(String sql, Token type) {
+        SqlLexer lexer = new SqlLexer(sql);
+        for (Token token = lexer.next(); token != Token.END; token = lexer.next()) {
+            if (token == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Injects optimizer hints into provided query
+     * <br/>Hints are placed either in front of the whole query or right after its first <code>SELECT</code> keyword if any
+     * <br/>For a query with a leading <code>WITH</code> clause the <code>SELECT</code> keywords of the common table expressions are skipped,
+     * so that hints are applied to the main query
+     *
+     * @param sql     SQL query
+     * @param hints   hints text (without comment markers)
+     * @param leading true if hints precede the query
+     * @return hinted query
+     */
+    static String hint(String sql, String hints, boolean leading) {
+        String comment = format("/*+ %s */", hints);
+        if (!leading) {
+            SqlLexer lexer = new SqlLexer(sql);
+            Boolean cte = null; // whether query starts with WITH
+            int depth = 0;
+            for (Token token = lexer.next(); token != Token.END; token = lexer.next()) {
+                if (token != Token.TEXT) {
+                    continue;
+                }
+                for (int i = lexer.start; i < lexer.end; i++) {
+                    char c = sql.charAt(i);
+                    if (c == '(') {
+                        depth++;
+                    } else if (c == ')') {
+                        depth--;
+                    } else if (isNameChar(c) && (i == lexer.start || !isNameChar(sql.charAt(i - 1)))) {
+                        if (cte == null) {
+                            cte = isKeyword(sql, i, lexer.end, "WITH");
+                        }
+                        if ((!cte || depth == 0) && isKeyword(sql, i, lexer.end, "SELECT")) {
+                            int keywordEnd = i + 6;
+                            return sql.substring(0, keywordEnd) + ' ' + comment + (keywordEnd < sql.length() && isWhitespace(sql.charAt(keywordEnd)) ? "" : " ") + sql.substring(keywordEnd);
+                        }
+                    }
+                }
+            }
+        }
+        return comment + ' ' + sql;
+    }
+
+    private static boolean isKeyword(String sql, int from, int to, String keyword) {
+        int keywordEnd = from + keyword.length();
+        return keywordEnd <= to && sql.regionMatches(true, from, keyword, 0, keyword.length()) && (keywordEnd == to || !isNameChar(sql.charAt(keywordEnd)));
+    }
+
+    /**
+     * Splits provided script into separate statements
+     *
+     * @param script SQL script
+     * @return a list of non-empty statements (trimmed)
+     */
+    static List<String> split(String script) {
+        List<String> statements = new ArrayList<>();
+        SqlLexer lexer = new SqlLexer(script);
+        int from = 0;
+        Token token;
+        do {
+            token = lexer.next();
+            if (token == Token.DELIMITER || token == Token.END) {
+                String statement = script.substring(from, lexer.start).trim();
+                if (!statement.isEmpty()) {
+                    statements.add(statement);
+                }
+                from = lexer.end;
+            }
+        } while (token != Token.END);
+        return statements;
+    }
+
+}
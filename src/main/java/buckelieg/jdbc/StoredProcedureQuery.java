@@ -15,7 +15,6 @@
  */
 package buckelieg.jdbc;
 
-import buckelieg.jdbc.Utils.DefaultMapper;
 import buckelieg.jdbc.fn.TryFunction;
 import buckelieg.jdbc.fn.TryRunnable;
 import buckelieg.jdbc.fn.TrySupplier;
@@ -26,7 +25,6 @@ import javax.annotation.ParametersAreNonnullByDefault;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.sql.*;
 import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Condition;
@@ -45,7 +43,7 @@ final class StoredProcedureQuery extends SelectQuery implements StoredProcedure
     private TryFunction<CallableStatement, ?, SQLException> mapper;
     private Consumer consumer;
 
-    StoredProcedureQuery(Lock lock, Condition condition, boolean isTransactionRunning, Executor conveyor, ConcurrentMap<String, RSMeta.Column> metaCache, TrySupplier<Connection, SQLException> connectionSupplier, @Nullable TryRunnable<SQLException> onCompleted, String query, P<?>... params) {
+    StoredProcedureQuery(Lock lock, Condition condition, boolean isTransactionRunning, Executor conveyor, MetaCache metaCache, TrySupplier<Connection, SQLException> connectionSupplier, @Nullable TryRunnable<SQLException> onCompleted, String query, P<?>... params) {
         super(lock, condition, isTransactionRunning, conveyor, metaCache, connectionSupplier, onCompleted, query, params);
     }
 
@@ -60,10 +58,10 @@ final class StoredProcedureQuery extends SelectQuery implements StoredProcedure
     @Nonnull
     @Override
     public Stream<Map<String, Object>> execute() {
-        AtomicReference<TryFunction<ResultSet, Map<String, Object>, SQLException>> mapper = new AtomicReference<>(new DefaultMapper());
+        AtomicReference<TryFunction<ResultSet, Map<String, Object>, SQLException>> mapper = new AtomicReference<>(newDefaultMapper());
         return execute((rs, i) -> {
             if(i != currentResultSetNumber) {
-                mapper.set(new DefaultMapper());
+                mapper.set(newDefaultMapper());
             }
             return mapper.get().apply(rs);
         });
@@ -129,7 +127,7 @@ final class StoredProcedureQuery extends SelectQuery implements StoredProcedure
                     }
                 }
                 if (p.isIn() || p.isInOut()) {
-                    cs.setObject(i, p.getValue());
+                    p.set(cs, i);
                 }
             }
             return cs;
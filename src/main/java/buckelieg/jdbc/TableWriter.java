@@ -0,0 +1,284 @@
+/*
+ * Copyright 2016- Anatoly Kutyakov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package buckelieg.jdbc;
+
+import buckelieg.jdbc.fn.TryRunnable;
+
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+import static java.util.Collections.nCopies;
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Set-based writer of the rows of a single table (existing rows are identified by their primary keys)
+ * <br/>Used by batched <code>SELECT ... FOR INSERT/UPDATE/DELETE</code> actions instead of updatable cursor:
+ * row changes are buffered and applied in chunks of the configured size with plain DML statements
+ * <br/>Inserts and updates are grouped by the set of columns provided so each group is executed as a single batched statement
+ */
+@NotThreadSafe
+@ParametersAreNonnullByDefault
+final class TableWriter {
+
+    private static final class Group {
+
+        final String sql;
+        final List<String> parameters;
+        final List<Object[]> rows = new ArrayList<>();
+        final List<TryRunnable<SQLException>> callbacks = new ArrayList<>();
+
+        Group(String sql, List<String> parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+
+    private final Connection connection;
+    private final MetaCache.TableMeta tableMeta;
+    private final String table;
+    private final String quote;
+    private final List<String> keys;
+    private final int[] keyIndices;
+    private final int batchSize;
+    private final List<Object[]> deletes = new ArrayList<>();
+    private final List<TryRunnable<SQLException>> deleted = new ArrayList<>();
+    private final Map<List<String>, Group> updates = new LinkedHashMap<>();
+    private final Map<List<String>, Group> inserts = new LinkedHashMap<>();
+
+    private TableWriter(Connection connection, MetaCache.TableMeta tableMeta, String table, String quote, List<String> keys, int[] keyIndices, int batchSize) {
+        this.connection = connection;
+        this.tableMeta = tableMeta;
+        this.table = table;
+        this.quote = quote;
+        this.keys = keys;
+        this.keyIndices = keyIndices;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Creates a writer for the table the result set is selected from
+     *
+     * @param connection a connection to write with
+     * @param meta       result set metadata
+     * @param batchSize  maximum number of buffered rows per statement
+     * @return a writer or null if the result set is not selected from a single table
+     * @throws SQLException if something went wrong
+     * @see #isKeyed()
+     */
+    @Nullable
+    static TableWriter of(Connection connection, RSMeta meta, int batchSize) throws SQLException {
+        MetaCache.Table table = meta.getTable();
+        if (table == null) {
+            return null;
+        }
+        MetaCache.TableMeta tableMeta = meta.getTableMeta(table);
+        List<String> keys = new ArrayList<>();
+        for (MetaCache.Column column : tableMeta.columns()) {
+            if (column.pk) {
+                keys.add(column.name);
+            }
+        }
+        List<String> columnNames = meta.getColumnNames();
+        int[] keyIndices = keys.isEmpty() ? null : new int[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            keyIndices[i] = indexOf(columnNames, keys.get(i));
+            if (keyIndices[i] < 1) {
+                keyIndices = null; // existing rows can not be identified
+                break;
+            }
+        }
+        String quote = connection.getMetaData().getIdentifierQuoteString();
+        quote = quote == null || quote.trim().isEmpty() ? "" : quote.trim();
+        String schema = table.schema != null ? table.schema : table.catalog;
+        String name = schema == null ? quote(quote, table.name) : quote(quote, schema) + "." + quote(quote, table.name);
+        return new TableWriter(connection, tableMeta, name, quote, keys, keyIndices, batchSize);
+    }
+
+    /**
+     * @return true if the result set contains all the primary key columns of the table so its rows can be updated or deleted
+     */
+    boolean isKeyed() {
+        return keyIndices != null;
+    }
+
+    private static int indexOf(List<String> columnNames, String column) {
+        for (int i = 0; i < columnNames.size(); i++) {
+            if (column.equalsIgnoreCase(columnNames.get(i))) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static String quote(String quote, String identifier) {
+        return quote + identifier + quote;
+    }
+
+    private String where() {
+        return keys.stream().map(key -> quote(quote, key) + " = ?").collect(joining(" AND "));
+    }
+
+    private Object[] key(ResultSet rs, Object[] row, int offset) throws SQLException {
+        for (int i = 0; i < keyIndices.length; i++) {
+            row[offset + i] = rs.getObject(keyIndices[i]);
+        }
+        return row;
+    }
+
+    /**
+     * Schedules deletion of the current row
+     *
+     * @param rs        a result set positioned at the row
+     * @param onDeleted an action to run as soon as the row is actually deleted
+     * @throws SQLException if something went wrong
+     */
+    void delete(ResultSet rs, TryRunnable<SQLException> onDeleted) throws SQLException {
+        deletes.add(key(rs, new Object[keyIndices.length], 0));
+        deleted.add(onDeleted);
+        if (deletes.size() >= batchSize) {
+            flushDeletes();
+        }
+    }
+
+    /**
+     * Schedules an update of the current row
+     *
+     * @param rs        a result set positioned at the row
+     * @param changes   changed column values (by column name)
+     * @param onUpdated an action to run as soon as the row is actually updated
+     * @throws SQLException if something went wrong
+     */
+    void update(ResultSet rs, Map<String, Object> changes, TryRunnable<SQLException> onUpdated) throws SQLException {
+        List<String> columns = new ArrayList<>(changes.keySet());
+        Group group = updates.computeIfAbsent(columns, cols -> {
+            List<String> parameters = new ArrayList<>(cols);
+            parameters.addAll(keys);
+            return new Group(format("UPDATE %s SET %s WHERE %s", table, cols.stream().map(col -> quote(quote, col) + " = ?").collect(joining(", ")), where()), parameters);
+        });
+        Object[] row = new Object[columns.size() + keyIndices.length];
+        for (int i = 0; i < columns.size(); i++) {
+            row[i] = changes.get(columns.get(i));
+        }
+        group.rows.add(key(rs, row, columns.size()));
+        add(group, onUpdated);
+    }
+
+    /**
+     * Schedules an insert of a new row
+     *
+     * @param values     column values (by column name)
+     * @param onInserted an action to run as soon as the row is actually inserted
+     * @throws SQLException if something went wrong
+     */
+    void insert(Map<String, Object> values, TryRunnable<SQLException> onInserted) throws SQLException {
+        List<String> columns = new ArrayList<>(values.keySet());
+        Group group = inserts.computeIfAbsent(columns, cols -> new Group(format("INSERT INTO %s(%s) VALUES(%s)", table, cols.stream().map(col -> quote(quote, col)).collect(joining(", ")), String.join(", ", nCopies(cols.size(), "?"))), cols));
+        Object[] row = new Object[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            row[i] = values.get(columns.get(i));
+        }
+        group.rows.add(row);
+        add(group, onInserted);
+    }
+
+    private void add(Group group, TryRunnable<SQLException> callback) throws SQLException {
+        group.callbacks.add(callback);
+        if (group.rows.size() >= batchSize) {
+            flush(group);
+        }
+    }
+
+    /**
+     * Applies all the buffered changes
+     *
+     * @throws SQLException if something went wrong
+     */
+    void flush() throws SQLException {
+        flushDeletes();
+        for (Group group : updates.values()) {
+            flush(group);
+        }
+        for (Group group : inserts.values()) {
+            flush(group);
+        }
+    }
+
+    private void flushDeletes() throws SQLException {
+        if (deletes.isEmpty()) {
+            return;
+        }
+        if (keys.size() == 1) { // single column keys are deleted with IN list
+            try (PreparedStatement statement = connection.prepareStatement(format("DELETE FROM %s WHERE %s IN (%s)", table, quote(quote, keys.get(0)), String.join(", ", nCopies(deletes.size(), "?"))))) {
+                for (int i = 0; i < deletes.size(); i++) {
+                    setValue(statement, i + 1, keys.get(0), deletes.get(i)[0]);
+                }
+                statement.executeUpdate();
+            }
+        } else {
+            execute(format("DELETE FROM %s WHERE %s", table, where()), keys, deletes);
+        }
+        deletes.clear();
+        run(deleted);
+    }
+
+    private void flush(Group group) throws SQLException {
+        if (group.rows.isEmpty()) {
+            return;
+        }
+        execute(group.sql, group.parameters, group.rows);
+        group.rows.clear();
+        run(group.callbacks);
+    }
+
+    private void execute(String sql, List<String> parameters, List<Object[]> rows) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    setValue(statement, i + 1, parameters.get(i), row[i]);
+                }
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private void setValue(PreparedStatement statement, int index, String column, @Nullable Object value) throws SQLException {
+        MetaCache.Column meta;
+        if (value == null && (meta = tableMeta.column(column)) != null && meta.sqlType.getVendorTypeNumber() != null) {
+            statement.setNull(index, meta.sqlType.getVendorTypeNumber());
+        } else {
+            statement.setObject(index, value);
+        }
+    }
+
+    private static void run(List<TryRunnable<SQLException>> callbacks) throws SQLException {
+        for (TryRunnable<SQLException> callback : callbacks) {
+            callback.run();
+        }
+        callbacks.clear();
+    }
+
+}
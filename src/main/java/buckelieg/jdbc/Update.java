@@ -167,6 +167,19 @@ public interface Update extends Query {
     @Nonnull
     Update print(Consumer<String> printer);
 
+    /**
+     * Prints this query string (as SQL) to provided logger rendering not more than provided number of batch rows
+     * <br/>The number of rows omitted is appended as a trailing comment
+     *
+     * @param printer query string consumer
+     * @param maxRows maximum number of batch rows to render
+     * @return an update query abstraction
+     * @throws IllegalArgumentException if maxRows is not positive
+     * @see #print(Consumer)
+     */
+    @Nonnull
+    Update print(Consumer<String> printer, int maxRows);
+
     /**
      * {@inheritDoc}
      */
@@ -36,7 +36,6 @@ import static buckelieg.jdbc.Utils.*;
 import static java.sql.Statement.RETURN_GENERATED_KEYS;
 import static java.util.Arrays.stream;
 import static java.util.Objects.requireNonNull;
-import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Stream.of;
 
@@ -106,6 +105,20 @@ final class UpdateQuery extends AbstractQuery<Statement> implements Update {
         return log(printer);
     }
 
+    @Nonnull
+    @Override
+    public Update print(Consumer<String> printer, int maxRows) {
+        requireNonNull(printer, "Printer must be provided");
+        if (maxRows < 1) {
+            throw new IllegalArgumentException("Rows number must be positive");
+        }
+        if (maxRows >= batch.length) {
+            return log(printer);
+        }
+        conveyor.execute(() -> printer.accept(render(new StringBuilder(query.length() * maxRows), Integer.MAX_VALUE, maxRows).toString()));
+        return this;
+    }
+
     @Nonnull
     @Override
     public <T> Stream<T> execute(TryFunction<ResultSet, T, SQLException> generatedValuesMapper) {
@@ -213,8 +226,22 @@ final class UpdateQuery extends AbstractQuery<Statement> implements Update {
     }
 
     @Override
-    final String asSQL(String query, Object... params) {
-        return stream(params).flatMap(p -> of((Object[]) p)).map(p -> super.asSQL(query, (Object[]) p)).collect(joining(STATEMENT_DELIMITER));
+    final StringBuilder render(StringBuilder sql, int maxLength) {
+        return render(sql, maxLength, batch.length);
+    }
+
+    private StringBuilder render(StringBuilder sql, int maxLength, int maxRows) {
+        int rows = Math.min(batch.length, maxRows);
+        for (int i = 0; i < rows && sql.length() <= maxLength; i++) {
+            if (i > 0) {
+                sql.append(STATEMENT_DELIMITER);
+            }
+            Utils.asSQL(sql, query, maxLength, batch[i]);
+        }
+        if (rows < batch.length && sql.length() <= maxLength) {
+            sql.append(STATEMENT_DELIMITER).append("/* ").append(batch.length - rows).append(" more */");
+        }
+        return sql;
     }
 
     private Stream<Statement> streamBatch() {
@@ -18,9 +18,10 @@ package buckelieg.jdbc;
 import buckelieg.jdbc.fn.*;
 
 import javax.annotation.Nonnull;
-import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
+import javax.annotation.Nullable;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.lang.reflect.Method;
 import java.sql.*;
 import java.util.AbstractMap.SimpleImmutableEntry;
@@ -28,7 +29,6 @@ import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -39,22 +39,13 @@ import static java.sql.JDBCType.*;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static java.util.Objects.requireNonNull;
-import static java.util.Optional.empty;
 import static java.util.Optional.ofNullable;
 import static java.util.regex.Pattern.compile;
-import static java.util.stream.Collectors.joining;
-import static java.util.stream.Collectors.toMap;
-import static java.util.stream.Stream.of;
-import static java.util.stream.StreamSupport.stream;
 
 final class Utils {
 
     static final String EXCEPTION_MESSAGE = "Unsupported operation";
     static final String STATEMENT_DELIMITER = ";";
-    static final Pattern PARAMETER = compile("\\?");
-    private static final String QUOTATION_ESCAPE = "(?=(([^\"']*\"'){2})*[^\"']*$)";
-    static final Pattern NAMED_PARAMETER = compile(format("(:\\w*\\b)%s", QUOTATION_ESCAPE));
-    private static final Pattern STATEMENT_DELIMITER_PATTERN = compile(format("%s%s+", STATEMENT_DELIMITER, QUOTATION_ESCAPE));
 
     // Java regexp does not support conditional regexps. We will enumerate all possible variants.
     static final Pattern STORED_PROCEDURE = compile(format("%s|%s|%s|%s|%s|%s",
@@ -74,24 +65,19 @@ final class Utils {
         defaultReaders.put(BINARY, ResultSet::getBytes);
         defaultReaders.put(VARBINARY, ResultSet::getBytes);
         defaultReaders.put(LONGVARBINARY, (input, index) -> {
-            try (InputStream is = input.getBinaryStream(index); ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-                byte[] buffer = new byte[1024];
-                int length;
-                while ((length = is.read(buffer)) != -1) {
-                    bos.write(buffer, 0, length);
-                }
-                return bos.toByteArray();
-            } catch (Throwable t) {
-                throw newSQLRuntimeException(t);
+            try (InputStream is = input.getBinaryStream(index)) {
+                return is == null ? null : Lobs.readBytes(is);
+            } catch (IOException e) {
+                throw new SQLException(e);
             }
         });
         defaultReaders.put(VARCHAR, ResultSet::getString);
         defaultReaders.put(CHAR, ResultSet::getString);
         defaultReaders.put(LONGVARCHAR, (input, index) -> {
-            try (BufferedReader r = new BufferedReader(input.getCharacterStream(index))) {
-                return r.lines().collect(joining("\r\n"));
-            } catch (Throwable t) {
-                throw newSQLRuntimeException(t);
+            try (Reader r = input.getCharacterStream(index)) {
+                return r == null ? null : Lobs.readString(r);
+            } catch (IOException e) {
+                throw new SQLException(e);
             }
         });
         defaultReaders.put(DATE, ResultSet::getDate);
@@ -123,11 +109,68 @@ final class Utils {
         return result;
     };
 
+    static TryBiFunction<ResultSet, Integer, Object, SQLException> reader(SQLType type, long lobSpillThreshold) {
+        if (lobSpillThreshold >= 0) {
+            if (type == BLOB || type == LONGVARBINARY) {
+                return Lobs.binaryReader(lobSpillThreshold);
+            }
+            if (type == CLOB || type == NCLOB || type == LONGVARCHAR || type == LONGNVARCHAR) {
+                return Lobs.characterReader(lobSpillThreshold);
+            }
+        }
+        return defaultReaders.getOrDefault(type, ResultSet::getObject);
+    }
+
     static final class DefaultMapper implements TryFunction<ResultSet, Map<String, Object>, SQLException> {
 
+        private long lobSpillThreshold = -1L;
+        private Set<String> deduplicated;
+        private int maxDictionarySize;
+        private Set<String> projection;
+        private boolean lazy;
         private TryFunction<ResultSet, Map<String, Object>, SQLException> mapper;
         private List<Entry<Entry<String, Integer>, TryBiFunction<ResultSet, Integer, Object, SQLException>>> colReaders;
 
+        /**
+         * @param spillThreshold if non-negative - large objects are read as {@link Blob}/{@link Clob} spilling to disk above this length
+         * @return this mapper
+         */
+        DefaultMapper lobs(long spillThreshold) {
+            this.lobSpillThreshold = spillThreshold;
+            return this;
+        }
+
+        /**
+         * @param columns           lower-cased labels of the columns which values are to be deduplicated (empty means all columns)
+         * @param maxDictionarySize maximum number of distinct values per column
+         * @return this mapper
+         * @see ValueDictionary
+         */
+        DefaultMapper deduplicate(@Nullable Set<String> columns, int maxDictionarySize) {
+            this.deduplicated = columns;
+            this.maxDictionarySize = maxDictionarySize;
+            return this;
+        }
+
+        /**
+         * @param columns lower-cased labels of the columns to read (<code>null</code> means all columns)
+         * @return this mapper
+         */
+        DefaultMapper columns(@Nullable Set<String> columns) {
+            this.projection = columns;
+            return this;
+        }
+
+        /**
+         * @param lazy whether to read column values on first access
+         * @return this mapper
+         * @see LazyRow
+         */
+        DefaultMapper lazy(boolean lazy) {
+            this.lazy = lazy;
+            return this;
+        }
+
         @Override
         public Map<String, Object> apply(ResultSet input) throws SQLException {
             if (mapper == null) {
@@ -135,10 +178,34 @@ final class Utils {
                 int columnCount = meta.getColumnCount();
                 colReaders = new ArrayList<>(columnCount);
                 for (int col = 1; col <= columnCount; col++) {
-                    colReaders.add(new SimpleImmutableEntry<>(new SimpleImmutableEntry<>(meta.getColumnLabel(col), col), defaultReaders.getOrDefault(valueOf(meta.getColumnType(col)), ResultSet::getObject)));
+                    String label = meta.getColumnLabel(col);
+                    if (projection != null && !projection.contains(label.toLowerCase(Locale.ROOT))) {
+                        continue;
+                    }
+                    TryBiFunction<ResultSet, Integer, Object, SQLException> reader = reader(valueOf(meta.getColumnType(col)), lobSpillThreshold);
+                    if (deduplicated != null && (deduplicated.isEmpty() || deduplicated.contains(label.toLowerCase(Locale.ROOT)))) {
+                        ValueDictionary dictionary = new ValueDictionary(maxDictionarySize);
+                        TryBiFunction<ResultSet, Integer, Object, SQLException> read = reader;
+                        reader = (rs, index) -> dictionary.intern(read.apply(rs, index));
+                    }
+                    colReaders.add(new SimpleImmutableEntry<>(new SimpleImmutableEntry<>(label, col), reader));
+                }
+                if (lazy) {
+                    int size = colReaders.size();
+                    String[] labels = new String[size];
+                    int[] indices = new int[size];
+                    List<TryBiFunction<ResultSet, Integer, Object, SQLException>> readers = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        labels[i] = colReaders.get(i).getKey().getKey();
+                        indices[i] = colReaders.get(i).getKey().getValue();
+                        readers.add(colReaders.get(i).getValue());
+                    }
+                    LazyRow.Source source = new LazyRow.Source(input, labels, indices, readers);
+                    mapper = rs -> source.next();
+                    return mapper.apply(input);
                 }
                 mapper = rs -> {
-                    Map<String, Object> result = new LinkedHashMap<>(columnCount);
+                    Map<String, Object> result = new LinkedHashMap<>(colReaders.size());
                     for (Entry<Entry<String, Integer>, TryBiFunction<ResultSet, Integer, Object, SQLException>> e : colReaders) {
                         result.put(e.getKey().getKey(), e.getValue().apply(rs, e.getKey().getValue()));
                     }
@@ -155,32 +222,22 @@ final class Utils {
 
     @Nonnull
     static Entry<String, Object[]> prepareQuery(String query, Iterable<? extends Entry<String, ?>> namedParams) {
-        Map<Integer, Object> indicesToValues = new TreeMap<>();
-        Map<String, Optional<?>> transformedParams = stream(namedParams.spliterator(), false).collect(toMap(
-                e -> e.getKey().startsWith(":") ? e.getKey() : format(":%s", e.getKey()),
-                e -> ofNullable(e.getValue()) // HashMap/ConcurrentHashMap merge function fails on null values
-        ));
-        Matcher matcher = NAMED_PARAMETER.matcher(query);
-        int idx = 0;
-        while (matcher.find()) {
-            for (Object o : asIterable(transformedParams.getOrDefault(matcher.group(), empty()))) {
-                indicesToValues.put(++idx, o);
+        Map<String, Object> params = new HashMap<>();
+        for (Entry<String, ?> e : namedParams) {
+            String name = e.getKey().startsWith(":") ? e.getKey() : format(":%s", e.getKey());
+            if (params.containsKey(name)) {
+                throw new IllegalStateException(format("Duplicate key %s", name));
             }
+            params.put(name, e.getValue());
         }
-        for (Entry<String, Optional<?>> e : transformedParams.entrySet()) {
-            query = query.replaceAll(
-                    format("(%s\\b)%s", e.getKey(), QUOTATION_ESCAPE),
-                    stream(asIterable(e.getValue()).spliterator(), false).map(o -> "?").collect(joining(","))
-            );
-        }
-        return new SimpleImmutableEntry<>(checkAnonymous(query), indicesToValues.values().toArray());
+        QueryTemplate template = QueryTemplate.compile(query, params);
+        return new SimpleImmutableEntry<>(template.query(), template.values(params));
     }
 
-    @SuppressWarnings({"rawtypes", "unchecked", "OptionalUsedAsFieldOrParameterType"})
-    private static Iterable<?> asIterable(Optional o) {
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    static Iterable<?> asIterable(@Nullable Object value) {
         Iterable<?> iterable;
-        Object value = o.orElse(singletonList(null));
-        if (value.getClass().isArray()) {
+        if (value != null && value.getClass().isArray()) {
             if (value instanceof Object[]) {
                 iterable = asList((Object[]) value);
             } else {
@@ -206,7 +263,7 @@ final class Utils {
     }
 
     static boolean isAnonymous(String query) {
-        return !NAMED_PARAMETER.matcher(query).find();
+        return !SqlLexer.hasNamedParameters(query);
     }
 
     static SQLRuntimeException newSQLRuntimeException(Throwable... throwables) {
@@ -311,101 +368,13 @@ final class Utils {
         }
     }
 
-    // TODO retain SQL hints comments: /*+ */
     static String cutComments(String query) {
-        int queryIndex = -4;
-        String replaced = query.replaceAll("\\R", "\r\n");
-        List<Integer> singleLineCommentStartIndices = new ArrayList<>();
-        List<Integer> singleLineCommentEndIndices = new ArrayList<>();
-        List<Integer> multiLineCommentStartIndices = new ArrayList<>();
-        List<Integer> multiLineCommentsEndIndices = new ArrayList<>();
-        boolean isInsideComment = false;
-        boolean isInsideQuotes = false;
-        boolean isSingleLineComment = false;
-        boolean isInnerComment = false;
-        Character outerQuote = null;
-        for (String line : replaced.split("\r\n")) {
-            queryIndex = queryIndex + 3;
-            if (line.isEmpty()) {
-                queryIndex--;
-                continue;
-            }
-            for (int i = 1; i < line.length(); i++) {
-                ++queryIndex;
-                char prev = line.charAt(i - 1);
-                char cur = line.charAt(i);
-                if (isInsideQuotes) {
-                    if ('\'' == prev || '"' == prev) {
-                        if (outerQuote != null && outerQuote.equals(prev)) {
-                            isInsideQuotes = false;
-                            outerQuote = null;
-                        }
-                    }
-                    continue;
-                }
-                if (isInsideComment) {
-                    if (isSingleLineComment) continue;
-                    if (!isInnerComment && ('*' == cur && '/' == prev)) {
-                        isInnerComment = true;
-                        continue;
-                    }
-                    if ('*' == prev && '/' == cur) {
-                        multiLineCommentsEndIndices.add(queryIndex + 2);
-                        isInnerComment = false;
-                        isInsideComment = false;
-                        continue;
-                    }
-                } else {
-                    if ('-' == cur && '-' == prev) {
-                        singleLineCommentStartIndices.add(queryIndex);
-                        isInsideComment = true;
-                        isSingleLineComment = true;
-                        continue;
-                    }
-                    if ('*' == cur && '/' == prev) {
-                        isInsideComment = true;
-                        multiLineCommentStartIndices.add(queryIndex);
-                        continue;
-                    }
-                    if ('*' == prev && '/' == cur) {
-                        multiLineCommentsEndIndices.add(queryIndex + 2);
-                        isInsideComment = false;
-                        continue;
-                    }
-                }
-                if ('\'' == prev || '"' == prev) {
-                    isInsideQuotes = true;
-                    outerQuote = prev;
-                }
-            }
-            if (isInsideComment && isSingleLineComment) {
-                singleLineCommentEndIndices.add(queryIndex + 2);
-                isSingleLineComment = false;
-                isInsideComment = false;
-            }
-        }
-        if (multiLineCommentStartIndices.size() != multiLineCommentsEndIndices.size()) {
-            throw new SQLRuntimeException(format("Multiline comments open/close tags count mismatch (%s/%s) for query:\r\n%s", multiLineCommentStartIndices.size(), multiLineCommentsEndIndices.size(), query), true);
-        }
-        if (!multiLineCommentStartIndices.isEmpty() && (multiLineCommentStartIndices.get(0) > multiLineCommentsEndIndices.get(0))) {
-            throw new SQLRuntimeException(format("Unmatched start multiline comment at %s for query:\r\n%s", multiLineCommentStartIndices.get(0), query), true);
-        }
-        replaced = replaceChars(replaced, singleLineCommentStartIndices, singleLineCommentEndIndices);
-        replaced = replaceChars(replaced, multiLineCommentStartIndices, multiLineCommentsEndIndices);
-        return replaced.replaceAll("(\\s){2,}", " ").trim();
-    }
-
-    private static String replaceChars(String source, List<Integer> startIndices, List<Integer> endIndices) {
-        String replaced = source;
-        for (int i = 0; i < startIndices.size(); i++) {
-            replaced = replaced.replace(replaced.substring(startIndices.get(i), endIndices.get(i)), format("%" + (endIndices.get(i) - startIndices.get(i)) + "s", " "));
-        }
-        return replaced;
+        return SqlLexer.cutComments(query);
     }
 
     static String checkSingle(String query) {
         query = cutComments(query);
-        if (STATEMENT_DELIMITER_PATTERN.matcher(query).find()) {
+        if (SqlLexer.hasDelimiters(query)) {
             throw new IllegalArgumentException(format("Query '%s' is not a single one", query));
         }
         return query;
@@ -414,26 +383,48 @@ final class Utils {
     static <S extends PreparedStatement> S setStatementParameters(S statement, Object... params) throws SQLException {
         int pNum = 0;
         for (Object p : params) {
-            statement.setObject(++pNum, p); // introduce type conversion here?
+            if (p instanceof P) {
+                ((P<?>) p).set(statement, ++pNum);
+            } else {
+                statement.setObject(++pNum, p); // introduce type conversion here?
+            }
         }
         return statement;
     }
 
     static String asSQL(String query, Object... params) {
-        String replaced = query;
+        return asSQL(new StringBuilder(query.length()), query, Integer.MAX_VALUE, params).toString();
+    }
+
+    /**
+     * Appends provided query to the buffer substituting its parameters with their string representations
+     * <br/>Rendering stops as soon as the buffer length exceeds provided limit
+     *
+     * @param sql       a buffer to append to
+     * @param query     a query
+     * @param maxLength buffer length limit
+     * @param params    query parameters
+     * @return provided buffer
+     */
+    static StringBuilder asSQL(StringBuilder sql, String query, int maxLength, Object... params) {
+        SqlLexer lexer = new SqlLexer(query);
         int idx = 0;
-        Matcher matcher = PARAMETER.matcher(query);
-        while (matcher.find()) {
-            Object p = params[idx];
-            replaced = replaced.replaceFirst(
-                    "\\?",
-                    (p != null && p.getClass().isArray() ? of((Object[]) p) : of(ofNullable(p).orElse("null")))
-                            .map(Object::toString)
-                            .collect(joining(","))
-            );
-            idx++;
+        for (SqlLexer.Token token = lexer.next(); token != SqlLexer.Token.END && sql.length() <= maxLength; token = lexer.next()) {
+            if (token == SqlLexer.Token.PARAMETER && idx < params.length) {
+                Object p = params[idx++];
+                if (p instanceof Object[]) {
+                    Object[] values = (Object[]) p;
+                    for (int i = 0; i < values.length && sql.length() <= maxLength; i++) {
+                        sql.append(i == 0 ? "" : ",").append(values[i]);
+                    }
+                } else {
+                    sql.append(p);
+                }
+            } else {
+                sql.append(query, lexer.start(), lexer.end());
+            }
         }
-        return replaced;
+        return sql;
     }
 
     static <T> Stream<T> rsStream(ResultSet resultSet, TryFunction<ResultSet, T, SQLException> mapper) {
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016- Anatoly Kutyakov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package buckelieg.jdbc;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bounded dictionary of immutable column values which makes equal values share the same instance
+ * <br/>Dictionary gives up (and releases its content) as soon as column turns out to be of high cardinality:
+ * either the number of distinct values exceeds the limit or, after warm-up, most of the lookups are misses
+ */
+@NotThreadSafe
+final class ValueDictionary {
+
+    private static final int WARM_UP = 256;
+
+    private final int maxSize;
+    private Map<Object, Object> values = new HashMap<>();
+    private long lookups;
+    private long misses;
+
+    ValueDictionary(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Nullable
+    Object intern(@Nullable Object value) {
+        if (values == null || !(value instanceof String || value instanceof BigDecimal || value instanceof BigInteger)) {
+            return value;
+        }
+        lookups++;
+        Object existing = values.putIfAbsent(value, value);
+        if (existing != null) {
+            return existing;
+        }
+        misses++;
+        if (values.size() > maxSize || (lookups >= WARM_UP && misses * 2 > lookups)) {
+            values = null; // high cardinality column - deduplication does not pay off
+        }
+        return value;
+    }
+
+}
@@ -25,15 +25,27 @@ import org.junit.Test;
 
 import javax.sql.DataSource;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static buckelieg.jdbc.Utils.*;
@@ -755,4 +767,714 @@ public class DBTestSuite {
         service.awaitTermination(5, TimeUnit.MINUTES);
     }
 
+    @Test
+    public void testLobs() throws Exception {
+        conn.createStatement().execute("CREATE TABLE TEST_LOBS(id int PRIMARY KEY, text LONG VARCHAR, doc CLOB, data BLOB)");
+        try {
+            String text = "first line\nsecond line\r\n\nlast line";
+            byte[] data = new byte[10000];
+            new Random(42).nextBytes(data);
+            PreparedStatement ps = conn.prepareStatement("INSERT INTO TEST_LOBS(id, text, doc, data) VALUES(?, ?, ?, ?)");
+            ps.setInt(1, 1);
+            ps.setString(2, text);
+            ps.setString(3, text);
+            ps.setBytes(4, data);
+            ps.execute();
+            ps.close();
+            assertEquals(text, db.select("SELECT text FROM TEST_LOBS").single().map(row -> row.get("TEXT")).orElse(null));
+            for (long threshold : new long[]{0, 16, 1 << 20, Long.MAX_VALUE}) {
+                Map<String, Object> row = db.select("SELECT * FROM TEST_LOBS").lobs(threshold).single().orElseThrow(NoSuchElementException::new);
+                Clob clob = (Clob) row.get("TEXT");
+                assertEquals(text, clob.getSubString(1, (int) clob.length()));
+                assertEquals(12, clob.position("second", 1));
+                assertEquals(text, new String(Lobs.readBytes(clob.getAsciiStream()), StandardCharsets.US_ASCII));
+                clob = (Clob) row.get("DOC");
+                try (BufferedReader reader = new BufferedReader(clob.getCharacterStream())) {
+                    assertEquals("first line", reader.readLine());
+                }
+                Blob blob = (Blob) row.get("DATA");
+                assertEquals(data.length, blob.length());
+                assertArrayEquals(data, blob.getBytes(1, (int) blob.length()));
+                assertArrayEquals(Arrays.copyOfRange(data, 100, 110), blob.getBytes(101, 10));
+                blob.free();
+            }
+        } finally {
+            conn.createStatement().execute("DROP TABLE TEST_LOBS");
+        }
+    }
+
+    @Test
+    public void testStreamingParameters() throws Exception {
+        conn.createStatement().execute("CREATE TABLE TEST_LOBS(id int PRIMARY KEY, text LONG VARCHAR, doc CLOB, data BLOB)");
+        Path binary = Files.createTempFile("test", ".bin");
+        Path text = Files.createTempFile("test", ".txt");
+        try {
+            byte[] data = new byte[100000];
+            new Random(7).nextBytes(data);
+            Files.write(binary, data);
+            String content = "first line\nsecond line";
+            Files.write(text, content.getBytes(StandardCharsets.UTF_8));
+            assertEquals(2L, db.update("INSERT INTO TEST_LOBS(id, text, doc, data) VALUES(?, ?, ?, ?)", new Object[][]{
+                    {1, P.character(new StringReader(content), content.length()), P.clob(text, StandardCharsets.UTF_8), P.blob(binary)},
+                    {2, P.character(text, StandardCharsets.UTF_8), P.clob(new StringReader(content), -1), P.binary(new ByteArrayInputStream(data), data.length)}
+            }).execute().longValue());
+            try (FileChannel channel = FileChannel.open(binary, StandardOpenOption.READ)) {
+                assertEquals(1L, db.update("UPDATE TEST_LOBS SET data = ? WHERE id = ?", P.binary(channel), 2).execute().longValue());
+                assertTrue(channel.isOpen());
+            }
+            P<InputStream> reused = P.blob(binary);
+            for (int id = 1; id <= 2; id++) { // file is read anew by every execution
+                assertEquals(1L, db.update("UPDATE TEST_LOBS SET data = ? WHERE id = ?", reused, id).execute().longValue());
+            }
+            InputStream stream = P.binary(binary).getValue();
+            assertEquals(data.length, stream.read(new byte[data.length * 2], 0, data.length));
+            assertEquals(-1, stream.read()); // file is closed once declared length is delivered
+            for (Map<String, Object> row : db.select("SELECT * FROM TEST_LOBS").lobs(1024).list()) {
+                assertEquals(content, row.get("TEXT").toString());
+                assertEquals(content, row.get("DOC").toString());
+                Blob blob = (Blob) row.get("DATA");
+                assertArrayEquals(data, blob.getBytes(1, (int) blob.length()));
+            }
+        } finally {
+            conn.createStatement().execute("DROP TABLE TEST_LOBS");
+            Files.deleteIfExists(binary);
+            Files.deleteIfExists(text);
+        }
+    }
+
+    @Test
+    public void testMaterialize() throws Exception {
+        String query = "SELECT id, name, CAST(id AS BIGINT) AS big, CAST(id AS DECIMAL(10, 2)) AS amount, CAST(NULL AS VARCHAR(1)) AS nil, CURRENT_DATE AS d, CURRENT_TIMESTAMP AS ts FROM TEST ORDER BY id";
+        List<Map<String, Object>> expected = db.select("SELECT id, name FROM TEST ORDER BY id").list();
+        for (long budget : new long[]{0, 1000, Long.MAX_VALUE}) {
+            try (Materialized rows = db.select(query).materialize(budget)) {
+                assertEquals(10, rows.size());
+                if (budget == 1000) {
+                    assertTrue(rows.spilled() + " rows spilled", rows.spilled() > 0 && rows.spilled() < 10); // some rows fit the budget
+                } else {
+                    assertEquals(budget == 0 ? 10 : 0, rows.spilled());
+                }
+                List<Map<String, Object>> first = rows.stream().collect(toList());
+                assertEquals(first, rows.stream().collect(toList()));
+                for (int i = 0; i < first.size(); i++) {
+                    Map<String, Object> row = first.get(i);
+                    assertEquals(expected.get(i).get("ID"), row.get("ID"));
+                    assertEquals(expected.get(i).get("NAME"), row.get("NAME"));
+                    assertEquals(Long.valueOf(i + 1), row.get("BIG"));
+                    assertEquals(new java.math.BigDecimal(i + 1).setScale(2), row.get("AMOUNT"));
+                    assertTrue(row.containsKey("NIL") && row.get("NIL") == null);
+                    assertTrue(row.get("D") instanceof java.sql.Date);
+                    assertTrue(row.get("TS") instanceof Timestamp);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMaterializeLobs() throws Exception {
+        conn.createStatement().execute("CREATE TABLE TEST_LOBS(id int PRIMARY KEY, text LONG VARCHAR, doc CLOB, data BLOB)");
+        try {
+            List<byte[]> data = new ArrayList<>();
+            List<String> docs = new ArrayList<>();
+            Random random = new Random(11);
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO TEST_LOBS(id, doc, data) VALUES(?, ?, ?)")) {
+                for (int id = 0; id < 6; id++) {
+                    byte[] bytes = new byte[id % 2 == 0 ? 100 : 100000]; // inline and out-of-line ones
+                    random.nextBytes(bytes);
+                    char[] chars = new char[id % 2 == 0 ? 10 : 50000];
+                    Arrays.fill(chars, (char) ('a' + id));
+                    data.add(bytes);
+                    docs.add(new String(chars));
+                    ps.setInt(1, id);
+                    ps.setString(2, docs.get(id));
+                    ps.setBytes(3, bytes);
+                    ps.execute();
+                }
+            }
+            try (Materialized rows = db.select("SELECT id, doc, data FROM TEST_LOBS ORDER BY id").lobs(Long.MAX_VALUE).materialize(300000)) {
+                assertTrue(rows.spilled() + " rows spilled", rows.spilled() > 0 && rows.spilled() < 6); // large objects count against the budget
+                for (int pass = 0; pass < 2; pass++) {
+                    int id = 0;
+                    for (Map<String, Object> row : rows.stream().collect(toList())) {
+                        Blob blob = (Blob) row.get("DATA");
+                        Clob doc = (Clob) row.get("DOC");
+                        assertArrayEquals(data.get(id), blob.getBytes(1, (int) blob.length()));
+                        assertEquals(docs.get(id), doc.getSubString(1, (int) doc.length()));
+                        id++;
+                    }
+                    assertEquals(6, id);
+                }
+            }
+        } finally {
+            conn.createStatement().execute("DROP TABLE TEST_LOBS");
+        }
+    }
+
+    @Test
+    public void testSorted() throws Exception {
+        assertEquals(140L, db.update("INSERT INTO TEST(name) VALUES(?)", java.util.stream.IntStream.rangeClosed(11, 150).mapToObj(i -> new Object[]{"name_" + i % 7}).toArray(Object[][]::new)).execute().longValue());
+        Comparator<Map<String, Object>> byName = Comparator.comparing(row -> (String) row.get("NAME"));
+        List<Map<String, Object>> expected = db.select("SELECT * FROM TEST ORDER BY id").list();
+        expected.sort(byName.reversed()); // stable
+        for (long budget : new long[]{0, 2000, Long.MAX_VALUE}) {
+            try (Stream<Map<String, Object>> sorted = db.select("SELECT * FROM TEST ORDER BY id").sorted(byName.reversed(), budget)) {
+                assertEquals(expected, sorted.collect(toList()));
+            }
+        }
+        try (Stream<Map<String, Object>> sorted = db.select("SELECT * FROM TEST ORDER BY id").sorted((r1, r2) -> 0, 0)) {
+            assertEquals(db.select("SELECT * FROM TEST ORDER BY id").list(), sorted.collect(toList()));
+        }
+        for (int fanIn : new int[]{2, 3, 5}) { // single row runs cascade through several merge levels
+            try (Stream<Map<String, Object>> sorted = ExternalSort.sort(db.select("SELECT * FROM TEST ORDER BY id").execute(), byName.reversed(), 0, 1, fanIn)) {
+                assertEquals(expected, sorted.collect(toList()));
+            }
+        }
+    }
+
+    @Test
+    public void testDeduplicate() throws Exception {
+        db.update("INSERT INTO TEST(name) VALUES(?)", java.util.stream.IntStream.rangeClosed(1, 100).mapToObj(i -> new Object[]{"code_" + i % 3}).toArray(Object[][]::new)).execute();
+        List<Map<String, Object>> rows = db.select("SELECT * FROM TEST WHERE name LIKE 'code%' ORDER BY id").deduplicate("NAME").list();
+        assertEquals(100, rows.size());
+        Map<Object, Object> instances = new IdentityHashMap<>();
+        rows.forEach(row -> instances.put(row.get("NAME"), row.get("NAME")));
+        assertEquals(3, instances.size());
+        instances.clear();
+        db.select("SELECT * FROM TEST WHERE name LIKE 'code%' ORDER BY id").list().forEach(row -> instances.put(row.get("NAME"), row.get("NAME")));
+        assertEquals(100, instances.size());
+        assertEquals(db.select("SELECT * FROM TEST ORDER BY id").list(), db.select("SELECT * FROM TEST ORDER BY id").deduplicate(2).list());
+    }
+
+    @Test
+    public void testLazyAndProjectedRows() throws Exception {
+        List<Map<String, Object>> projected = db.select("SELECT * FROM TEST ORDER BY id").columns("name").list();
+        assertEquals(10, projected.size());
+        assertTrue(projected.stream().allMatch(row -> row.keySet().equals(Collections.singleton("NAME"))));
+        assertEquals(
+                db.select("SELECT * FROM TEST ORDER BY id").list().stream().map(row -> row.get("NAME")).collect(toList()),
+                db.select("SELECT * FROM TEST ORDER BY id").lazy().execute().map(row -> row.get("NAME")).collect(toList())
+        );
+        List<Map<String, Object>> even = db.select("SELECT * FROM TEST ORDER BY id").lazy().execute().filter(row -> (Integer) row.get("ID") % 2 == 0).collect(toList());
+        assertEquals(5, even.size());
+        assertTrue(even.stream().allMatch(row -> row.size() == 1 && row.containsKey("ID") && !row.containsKey("NAME")));
+        assertTrue(db.select("SELECT * FROM TEST").lazy().list().stream().allMatch(Map::isEmpty));
+    }
+
+    @Test
+    public void testForEachRow() throws Exception {
+        long[] sum = new long[1];
+        List<String> names = new ArrayList<>();
+        List<Cursor> cursors = new ArrayList<>();
+        db.select("SELECT id, name, CAST(NULL AS INTEGER) AS nothing FROM TEST ORDER BY id").forEachRow(cursor -> {
+            Cursor.LongColumn id = cursor.longColumn("ID");
+            sum[0] += id.get();
+            names.add(cursor.stringColumn("name").get());
+            assertSame(id, cursor.longColumn("ID"));
+            assertEquals(0, cursor.intColumn("NOTHING").get());
+            assertTrue(cursor.wasNull());
+            assertTrue(cursor.objectColumn("NOTHING").isNull());
+            cursors.add(cursor);
+        });
+        assertEquals(55L, sum[0]);
+        assertEquals(db.select("SELECT name FROM TEST ORDER BY id").list(rs -> rs.getString(1)), names);
+        assertEquals(1, new HashSet<>(cursors).size());
+        int[] setups = new int[1];
+        List<String> texts = new ArrayList<>();
+        db.select("SELECT id, CAST(name AS CLOB) AS text FROM TEST ORDER BY id").forEachResultSet(cursor -> {
+            setups[0]++;
+            Cursor.LongColumn id = cursor.longColumn("ID");
+            Cursor.StringColumn text = cursor.stringColumn("TEXT");
+            return row -> {
+                assertFalse(id.isNull());
+                assertFalse(text.isNull()); // must not consume the stream read below
+                texts.add(text.get());
+            };
+        });
+        assertEquals(1, setups[0]);
+        assertEquals(names, texts);
+    }
+
+    @Test
+    public void testWhere() throws Exception {
+        List<Integer> mapped = new ArrayList<>();
+        List<Map<String, Object>> rows = db.select("SELECT * FROM TEST ORDER BY id")
+                .where(rs -> rs.getInt("ID") % 2 == 0)
+                .where(rs -> rs.getInt("ID") > 4)
+                .execute(rs -> {
+                    mapped.add(rs.getInt("ID"));
+                    return Collections.<String, Object>singletonMap("ID", rs.getInt("ID"));
+                })
+                .collect(toList());
+        assertEquals(Arrays.asList(6, 8, 10), mapped);
+        assertEquals(3, rows.size());
+        assertEquals(0, db.select("SELECT * FROM TEST").where(rs -> false).list().size());
+    }
+
+    @Test
+    public void testMetadataLookups() throws Exception {
+        db.select("SELECT t.id, t.name, t1.id FROM TEST t JOIN TEST1 t1 ON t.id = t1.id").single((rs, meta) -> {
+            assertEquals(Arrays.asList("ID", "NAME", "ID"), meta.getColumnNames());
+            assertSame(meta.getColumnNames(), meta.getColumnNames());
+            assertTrue(meta.exists("name") && meta.exists("NAME") && !meta.exists("nothing") && !meta.exists(null));
+            assertTrue(meta.isPrimaryKey("id") && meta.isPrimaryKey(1) && meta.isPrimaryKey(3) && !meta.isPrimaryKey("Name"));
+            assertFalse(meta.isNullable("name"));
+            assertEquals(JDBCType.VARCHAR, meta.getSQLType("Name"));
+            assertEquals(String.class, meta.getType(2));
+            assertEquals(Arrays.asList("ID", "ID"), meta.getPrimaryKeys());
+            return meta;
+        }).orElseThrow(NoSuchElementException::new);
+    }
+
+    @Test
+    public void testTableMetadata() throws Exception {
+        conn.createStatement().execute("CREATE TABLE TEST_REFS(id int PRIMARY KEY, test_id int NOT NULL REFERENCES TEST(id), note VARCHAR(255), amount DECIMAL(10, 2))");
+        try {
+            conn.createStatement().execute("INSERT INTO TEST_REFS(id, test_id, note, amount) VALUES(1, 1, NULL, 1.5)");
+            List<Object> facts = db.select("SELECT * FROM TEST_REFS").single((rs, meta) -> Arrays.<Object>asList(
+                    meta.getPrimaryKeys(),
+                    meta.getForeignKeys(),
+                    meta.referencedTable("TEST_ID").orElse(null),
+                    meta.referencedTable("NOTE").isPresent(),
+                    meta.isForeignKey(2),
+                    meta.isNullable("note"),
+                    meta.isNullable("test_id"),
+                    meta.getSQLType("AMOUNT")
+            )).orElseThrow(NoSuchElementException::new);
+            assertEquals(Arrays.asList(singletonList("ID"), singletonList("TEST_ID"), "APP.TEST", false, true, true, false, JDBCType.DECIMAL), facts);
+        } finally {
+            conn.createStatement().execute("DROP TABLE TEST_REFS");
+        }
+    }
+
+    @Test
+    public void testMetaCacheSingleFlight() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        DatabaseMetaData dbMeta = wrap(conn.getMetaData(), DatabaseMetaData.class, (source, proxy, method, args) -> {
+            if (method.getName().equals("getColumns")) {
+                loads.incrementAndGet();
+                Thread.sleep(100);
+            }
+            return method.invoke(source, args);
+        });
+        MetaCache cache = new MetaCache();
+        MetaCache.Table table = new MetaCache.Table(null, "APP", "TEST");
+        ExecutorService service = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<MetaCache.TableMeta>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(service.submit(() -> cache.get(dbMeta, table)));
+            }
+            MetaCache.TableMeta meta = results.get(0).get();
+            for (Future<MetaCache.TableMeta> result : results) {
+                assertSame(meta, result.get());
+            }
+            assertEquals(1, loads.get());
+            MetaCache.Column id = requireNonNull(meta.column("id"));
+            assertTrue(id.pk && !id.isForeignKey() && !id.nullable);
+            assertEquals(JDBCType.VARCHAR, requireNonNull(meta.column("NAME")).sqlType);
+            assertNull(meta.column("nothing"));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testMetaCacheInvalidation() throws Exception {
+        MetaCache cache = new MetaCache(1, TimeUnit.HOURS, 2);
+        DatabaseMetaData dbMeta = conn.getMetaData();
+        MetaCache.TableMeta test = cache.get(dbMeta, new MetaCache.Table(null, "APP", "TEST"));
+        assertSame(test, cache.get(dbMeta, new MetaCache.Table(null, "APP", "TEST")));
+        cache.get(dbMeta, new MetaCache.Table(null, "APP", "TEST1"));
+        cache.invalidate(dbMeta, "SELECT * FROM TEST");
+        cache.invalidate(dbMeta, "ALTER TABLE TEST2 ADD COLUMN x INT");
+        assertEquals(2, cache.size());
+        cache.invalidate(dbMeta, "alter table \"APP\".\"TEST\" ADD COLUMN x INT");
+        assertEquals(1, cache.size());
+        assertNotSame(test, cache.get(dbMeta, new MetaCache.Table(null, "APP", "TEST")));
+        cache.invalidate(dbMeta, "DROP TABLE other.TEST");
+        assertEquals(2, cache.size());
+        cache.get(dbMeta, new MetaCache.Table(null, "SYS", "SYSTABLES"));
+        assertEquals(2, cache.size()); // the eldest one is evicted
+        cache.configure(1, TimeUnit.NANOSECONDS, 2);
+        MetaCache.TableMeta expired = cache.get(dbMeta, new MetaCache.Table(null, "SYS", "SYSTABLES"));
+        Thread.sleep(1);
+        assertNotSame(expired, cache.get(dbMeta, new MetaCache.Table(null, "SYS", "SYSTABLES")));
+        db.metaCache(0, TimeUnit.SECONDS, MetaCache.DEFAULT_MAX_ENTRIES);
+        db.query("CREATE TABLE TEST_DDL(id int PRIMARY KEY, name VARCHAR(255))").execute();
+        try {
+            conn.createStatement().execute("INSERT INTO TEST_DDL(id, name) VALUES(1, 'name')");
+            assertEquals(singletonList("ID"), db.select("SELECT * FROM TEST_DDL").single((rs, meta) -> meta.getPrimaryKeys()).orElse(null));
+            db.script("ALTER TABLE TEST_DDL ADD COLUMN ref INT REFERENCES TEST(id)").execute();
+            assertEquals(singletonList("REF"), db.select("SELECT * FROM TEST_DDL").single((rs, meta) -> meta.getForeignKeys()).orElse(null));
+        } finally {
+            db.query("DROP TABLE TEST_DDL").execute();
+        }
+    }
+
+    @Test
+    public void testWarmUpAndSnapshot() throws Exception {
+        Path snapshot = Files.createTempFile("metadata", ".snapshot");
+        try (DB db = new DB(ds)) {
+            assertTrue(db.warmUp("test", "app.Test1", "\"TEST\"", "NOTHING").saveMetadata(snapshot).loadMetadata(snapshot));
+            new DB(() -> conn).warmUp("test", "test1", "app.test", "app.test1"); // the same connection is never shared by several loaders
+            MetaCache cache = new MetaCache();
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(snapshot))) {
+                assertTrue(cache.read(conn.getMetaData(), in));
+            }
+            assertTrue(cache.size() >= 2); // the cache is shared with the other DB instances of the same database
+            DatabaseMetaData dbMeta = wrap(conn.getMetaData(), DatabaseMetaData.class, (source, proxy, method, args) -> {
+                throw new SQLException("Metadata must be taken from the snapshot");
+            });
+            MetaCache.Column id = requireNonNull(cache.get(dbMeta, new MetaCache.Table("", "APP", "TEST1")).column("ID"));
+            assertTrue(id.pk && !id.nullable && id.sqlType == JDBCType.INTEGER);
+            conn.createStatement().execute("CREATE TABLE TEST_SNAPSHOT(id int PRIMARY KEY)");
+            try {
+                assertFalse(db.loadMetadata(snapshot)); // schema has changed since
+            } finally {
+                conn.createStatement().execute("DROP TABLE TEST_SNAPSHOT");
+            }
+            conn.createStatement().execute("CREATE TABLE SNAPSHOT_OTHER.TEST_SNAPSHOT(id int PRIMARY KEY)");
+            try {
+                assertTrue(db.loadMetadata(snapshot)); // only the schemas of the snapshot tables are fingerprinted
+            } finally {
+                conn.createStatement().execute("DROP TABLE SNAPSHOT_OTHER.TEST_SNAPSHOT");
+                conn.createStatement().execute("DROP SCHEMA SNAPSHOT_OTHER RESTRICT");
+            }
+            assertFalse(db.loadMetadata(Paths.get("test", "no such snapshot")));
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public void testMetaCacheExactTableName() throws Exception {
+        db.script("CREATE TABLE TEST_X(a INT); CREATE TABLE TESTXX(b INT)").execute();
+        try {
+            MetaCache.TableMeta meta = new MetaCache().get(conn.getMetaData(), new MetaCache.Table(null, "APP", "TEST_X"));
+            assertNotNull(meta.column("a"));
+            assertNull(meta.column("b")); // '_' is not a wildcard here
+        } finally {
+            db.script("DROP TABLE TEST_X; DROP TABLE TESTXX").execute();
+        }
+    }
+
+    @Test
+    public void testCloseAwaitsTasks() throws Exception {
+        AtomicReference<String> printed = new AtomicReference<>();
+        DB other = new DB(ds);
+        other.update("UPDATE TEST SET name=? WHERE id=?", "printed", 1).print(sql -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            printed.set(sql);
+        }).execute();
+        other.close();
+        assertEquals("UPDATE TEST SET name=printed WHERE id=1", printed.get());
+    }
+
+    @Test
+    public void testSharedMetaCache() throws Exception {
+        MetaCache first = MetaCache.shared();
+        MetaCache second = MetaCache.shared();
+        assertEquals(0, first.size());
+        MetaCache.TableMeta meta = first.get(conn.getMetaData(), new MetaCache.Table(null, "APP", "TEST"));
+        try (Connection other = ds.getConnection()) {
+            assertSame(meta, second.get(other.getMetaData(), new MetaCache.Table(null, "APP", "TEST")));
+            assertEquals(first.size(), second.size());
+            second.invalidate(other.getMetaData(), "DROP TABLE APP.TEST");
+            assertNotSame(meta, first.get(conn.getMetaData(), new MetaCache.Table(null, "APP", "TEST")));
+        }
+    }
+
+    @Test
+    public void testLightweightQueries() throws Exception {
+        int threads = Thread.activeCount();
+        for (int i = 0; i < 200; i++) {
+            assertEquals(1, Queries.single(conn, rs -> rs.getInt(1), "SELECT COUNT(*) FROM TEST WHERE id=?", 1).orElse(0).intValue());
+            new DB(conn).close(); // nothing to close except the connection which is not opened yet
+        }
+        assertTrue(Thread.activeCount() - threads < 10);
+        CompletableFuture<Thread> printer = new CompletableFuture<>();
+        db.select("SELECT * FROM TEST").print(sql -> printer.complete(currentThread())).list();
+        Thread thread = printer.get(1, TimeUnit.MINUTES);
+        assertTrue(thread.isDaemon() && thread.getName().startsWith("jdbc-fn-conveyor"));
+    }
+
+    @Test
+    public void testIndexedUpdateAndDelete() throws Exception {
+        List<Map<String, Object>> toUpdate = new ArrayList<>();
+        for (int id = 10; id > 0; id--) {
+            toUpdate.add(of("ID", id, "name", "updated_" + id, null, null));
+        }
+        toUpdate.add(Collections.singletonMap("name", "no key")); // has no primary key - matches every row but changes nothing after the keyed ones
+        List<Map<String, Object>> updated = db.select("SELECT * FROM TEST").forUpdate().list(toUpdate);
+        assertEquals(11, toUpdate.size()); // provided collection is left intact
+        assertEquals(10, updated.size());
+        for (Map<String, Object> row : updated) {
+            assertEquals("updated_" + row.get("ID"), row.get("NAME"));
+        }
+        List<String> names = Arrays.asList("updated_1", "updated_2", "updated_3");
+        List<String> renamed = db.select("SELECT * FROM TEST")
+                .forUpdate(rs -> rs.getString("name"), (oldName, newName, rs) -> {
+                    if (oldName.equals(newName)) rs.updateString("name", newName.toUpperCase());
+                })
+                .list(names);
+        assertEquals(names, renamed.subList(0, 3));
+        assertEquals(Arrays.asList("UPDATED_1", "UPDATED_2", "UPDATED_3", "updated_4"), db.select("SELECT name FROM TEST WHERE id < 5 ORDER BY id").list(rs -> rs.getString(1)));
+        List<Map<String, Object>> toDelete = Collections.unmodifiableList(Arrays.<Map<String, Object>>asList(
+                Collections.singletonMap("ID", 2),
+                Collections.singletonMap("id", 4),
+                Collections.singletonMap("Id", 4), // duplicates delete nothing more
+                Collections.singletonMap("ID", 42)
+        ));
+        assertEquals(8, db.select("SELECT * FROM TEST").forDelete().list(toDelete).size());
+        assertEquals(Arrays.asList(1, 3, 5, 6, 7, 8, 9, 10), db.select("SELECT id FROM TEST ORDER BY id").list(rs -> rs.getInt(1)));
+    }
+
+    @Test
+    public void testBatchDelete() throws Exception {
+        List<Map<String, Object>> toDelete = new ArrayList<>();
+        for (int id = 2; id <= 10; id += 2) {
+            toDelete.add(Collections.singletonMap("ID", id));
+        }
+        List<Object> deleted = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(5);
+        List<Map<String, Object>> rest = db.select("SELECT * FROM TEST").forDelete().batch(2).onDeleted(row -> {
+            deleted.add(row.get("ID"));
+            latch.countDown();
+        }).list(toDelete);
+        assertEquals(5, rest.size());
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(5, deleted.size());
+        assertEquals(Arrays.asList(1, 3, 5, 7, 9), db.select("SELECT id FROM TEST ORDER BY id").list(rs -> rs.getInt(1)));
+        assertTrue(db.select("SELECT * FROM TEST").forDelete().batch(10).single(Collections.singletonMap("ID", 3)));
+        assertEquals(4L, (long) db.select("SELECT COUNT(*) FROM TEST").single(rs -> rs.getLong(1)).orElse(0L));
+        try {
+            db.select("SELECT t.id, t1.name FROM TEST t JOIN TEST1 t1 ON t.id = t1.id").forDelete(rs -> rs.getInt(1), id -> id).batch(10).list(singletonList(1));
+            fail("Set-based delete must require primary keys of a single table");
+        } catch (SQLRuntimeException e) {
+            // expected
+        }
+        assertEquals(4L, (long) db.select("SELECT COUNT(*) FROM TEST").single(rs -> rs.getLong(1)).orElse(0L));
+    }
+
+    @Test
+    public void testBatchUpdate() throws Exception {
+        conn.createStatement().execute("CREATE TABLE TEST_BATCH(id int PRIMARY KEY, name VARCHAR(255), note VARCHAR(255))");
+        try {
+            for (int id = 1; id <= 6; id++) {
+                db.update("INSERT INTO TEST_BATCH(id, name, note) VALUES(?, ?, ?)", id, "name_" + id, "note_" + id).execute();
+            }
+            List<Map<String, Object>> toUpdate = new ArrayList<>();
+            for (int id = 1; id <= 6; id++) {
+                Map<String, Object> item = new HashMap<>();
+                item.put("ID", id);
+                item.put("NAME", id % 2 == 0 ? "even_" + id : "name_" + id); // odd rows change their notes only
+                item.put("NOTE", id % 3 == 0 ? "note_" + id : "changed_" + id); // the 3rd row is left intact, the 6th one changes its name only
+                toUpdate.add(item);
+            }
+            AtomicInteger handled = new AtomicInteger();
+            CountDownLatch latch = new CountDownLatch(5);
+            List<Map<String, Object>> updated = db.select("SELECT * FROM TEST_BATCH").forUpdate().batch(2).onUpdated((oldRow, newRow) -> {
+                handled.incrementAndGet();
+                latch.countDown();
+            }).list(toUpdate);
+            assertEquals(6, updated.size());
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(5, handled.get());
+            assertEquals(
+                    Arrays.asList("name_1:changed_1", "even_2:changed_2", "name_3:note_3", "even_4:changed_4", "name_5:changed_5", "even_6:note_6"),
+                    db.select("SELECT name, note FROM TEST_BATCH ORDER BY id").list(rs -> rs.getString(1) + ":" + rs.getString(2))
+            );
+            List<Integer> ids = db.select("SELECT id, note FROM TEST_BATCH")
+                    .forUpdate(rs -> rs.getInt(1), (id, target, rs) -> {
+                        if (id.equals(target)) rs.updateString(2, null);
+                    })
+                    .batch(10)
+                    .list(Arrays.asList(2, 5));
+            assertEquals(6, ids.size());
+            assertEquals(2L, (long) db.select("SELECT COUNT(*) FROM TEST_BATCH WHERE note IS NULL").single(rs -> rs.getLong(1)).orElse(0L));
+        } finally {
+            conn.createStatement().execute("DROP TABLE TEST_BATCH");
+        }
+    }
+
+    @Test
+    public void testBatchInsert() throws Exception {
+        List<Map<String, Object>> toInsert = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            toInsert.add(Collections.singletonMap("name", "batch_" + i));
+        }
+        CountDownLatch latch = new CountDownLatch(5);
+        List<Map<String, Object>> inserted = db.select("SELECT * FROM TEST").forInsert().batch(2).onInserted(row -> latch.countDown()).list(toInsert);
+        assertEquals(toInsert, inserted); // the select is not re-executed
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(5L, (long) db.select("SELECT COUNT(*) FROM TEST WHERE name LIKE 'batch_%'").single(rs -> rs.getLong(1)).orElse(0L));
+        assertTrue(db.select("SELECT id, name FROM TEST").forInsert(rs -> rs.getString("name"), (name, rs) -> rs.updateString("NAME", name)).batch(10).single("batch_single"));
+        assertEquals(16L, (long) db.select("SELECT COUNT(*) FROM TEST").single(rs -> rs.getLong(1)).orElse(0L));
+    }
+
+    @Test
+    public void testCommitEvery() throws Exception {
+        List<Map<String, Object>> toUpdate = new ArrayList<>();
+        for (int id = 1; id <= 10; id++) {
+            toUpdate.add(of("ID", id, "NAME", "chunked_" + id, null, null));
+        }
+        assertEquals(10, db.select("SELECT * FROM TEST").forUpdate().commitEvery(3).list(toUpdate).size());
+        assertEquals(10L, (long) db.select("SELECT COUNT(*) FROM TEST WHERE name LIKE 'chunked_%'").single(rs -> rs.getLong(1)).orElse(0L));
+        List<Map<String, Object>> toDelete = new ArrayList<>();
+        for (int id = 1; id <= 7; id++) {
+            toDelete.add(Collections.singletonMap("ID", id));
+        }
+        assertEquals(5, db.select("SELECT * FROM TEST").forDelete().commitEvery(2).list(toDelete.subList(0, 5)).size());
+        assertEquals(3, db.select("SELECT * FROM TEST").forDelete().batch(1).commitEvery(1).list(toDelete).size());
+        assertEquals(Arrays.asList(8, 9, 10), db.select("SELECT id FROM TEST ORDER BY id").list(rs -> rs.getInt(1)));
+        db.transaction(db -> {
+            assertEquals(2, db.select("SELECT * FROM TEST").forDelete().commitEvery(1).list(singletonList(Collections.singletonMap("ID", 8))).size()); // does not commit within a transaction
+            return null;
+        });
+        assertEquals(Arrays.asList(9, 10), db.select("SELECT id FROM TEST ORDER BY id").list(rs -> rs.getInt(1)));
+        AtomicInteger commits = new AtomicInteger();
+        Connection notHoldable = wrap(conn, Connection.class, (source, proxy, method, args) -> {
+            if ("commit".equals(method.getName())) {
+                commits.incrementAndGet();
+            }
+            if ("getMetaData".equals(method.getName())) {
+                return wrap(source.getMetaData(), DatabaseMetaData.class, (meta, metaProxy, metaMethod, metaArgs) -> "supportsResultSetHoldability".equals(metaMethod.getName()) ? Boolean.FALSE : metaMethod.invoke(meta, metaArgs));
+            }
+            return method.invoke(source, args);
+        });
+        assertEquals(2, new DB(() -> notHoldable).select("SELECT * FROM TEST").forUpdate().commitEvery(1).list(Arrays.asList(of("ID", 9, "NAME", "held_9", null, null), of("ID", 10, "NAME", "held_10", null, null))).size());
+        assertEquals(0, commits.get()); // falls back to a single commit on completion
+        assertEquals(Arrays.asList("held_9", "held_10"), db.select("SELECT name FROM TEST ORDER BY id").list(rs -> rs.getString(1)));
+    }
+
+    @Test
+    public void testBatchedEvents() throws Exception {
+        List<Map<String, Object>> toDelete = new ArrayList<>();
+        for (int id = 1; id <= 5; id++) {
+            toDelete.add(Collections.singletonMap("ID", id));
+        }
+        List<List<Map<String, Object>>> batches = Collections.synchronizedList(new ArrayList<>());
+        try {
+            db.transaction(db -> {
+                db.select("SELECT * FROM TEST").forDelete().onDeleted(2, batches::add).list(toDelete);
+                throw new SQLException("Rollback");
+            });
+            fail("Transaction must fail");
+        } catch (SQLRuntimeException e) {
+            // expected
+        }
+        assertEquals(10L, (long) db.select("SELECT COUNT(*) FROM TEST").single(rs -> rs.getLong(1)).orElse(0L));
+        CountDownLatch latch = new CountDownLatch(3);
+        assertEquals(5, db.select("SELECT * FROM TEST").forDelete().onDeleted(2, rows -> {
+            batches.add(rows);
+            latch.countDown();
+        }).list(toDelete).size());
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(3, batches.size()); // rolled back deletes are never delivered
+        assertEquals(Arrays.asList(2, 2, 1), batches.stream().map(List::size).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), batches.stream().flatMap(List::stream).map(row -> row.get("ID")).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testSqlLexer() throws Exception {
+        assertEquals(Arrays.asList("INSERT INTO TEST(name) VALUES(';')", "SELECT \"a;b\" FROM TEST /* ; */"), SqlLexer.split("INSERT INTO TEST(name) VALUES(';');; SELECT \"a;b\" FROM TEST /* ; */;"));
+        assertTrue(Utils.isAnonymous("SELECT id::VARCHAR FROM TEST -- WHERE id = :id"));
+        assertFalse(Utils.isAnonymous("SELECT id FROM TEST WHERE id = :id"));
+        Map.Entry<String, Object[]> entry = prepareQuery("SELECT ':id', id::INT /* :id */ FROM TEST WHERE id IN (:id) AND name = :name", Arrays.asList(
+                new SimpleImmutableEntry<>("id", new int[]{1, 2}),
+                new SimpleImmutableEntry<>("name", "name_1")
+        ));
+        assertEquals("SELECT ':id', id::INT /* :id */ FROM TEST WHERE id IN (?,?) AND name = ?", entry.getKey());
+        assertArrayEquals(new Object[]{1, 2, "name_1"}, entry.getValue());
+        int[] ids = new int[10_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+        }
+        entry = prepareQuery("SELECT * FROM TEST WHERE id IN (:ids)", singletonList(new SimpleImmutableEntry<>("ids", ids)));
+        assertEquals(ids.length, entry.getValue().length);
+        assertEquals(10L, (long) db.select("SELECT COUNT(*) FROM TEST WHERE id IN (:ids)", new SimpleImmutableEntry<>("ids", Arrays.copyOf(ids, 100))).single(rs -> rs.getLong(1)).orElse(0L));
+    }
+
+    @Test
+    public void testHints() throws Exception {
+        assertEquals("SELECT /*+ INDEX(t t_idx) */ * FROM TEST t WHERE id = ?", checkSingle("SELECT /*+ INDEX(t t_idx) */ * /* comment */ FROM TEST t -- comment\r\nWHERE id = ?"));
+        assertTrue(Utils.isAnonymous("SELECT /*+ :id */ * FROM TEST"));
+        assertEquals("SELECT /*+ FIRST_ROWS(10) */ * FROM TEST", SqlLexer.hint("SELECT * FROM TEST", "FIRST_ROWS(10)", false));
+        assertEquals("select /*+ FIRST_ROWS(10) */ *FROM TEST", SqlLexer.hint("select*FROM TEST", "FIRST_ROWS(10)", false));
+        assertEquals("/*+ SeqScan(t) */ SELECT * FROM TEST t", SqlLexer.hint("SELECT * FROM TEST t", "SeqScan(t)", true));
+        assertEquals("/*+ NO_CACHE */ VALUES 1", SqlLexer.hint("VALUES 1", "NO_CACHE", false));
+        assertEquals("WITH t AS (SELECT * FROM TEST) SELECT /*+ FULL(t) */ * FROM t", SqlLexer.hint("WITH t AS (SELECT * FROM TEST) SELECT * FROM t", "FULL(t)", false));
+        assertEquals("with t(id) as ( select id from TEST) ,s as (select 1 from t)select /*+ FULL(t) */ * from t", SqlLexer.hint("with t(id) as ( select id from TEST) ,s as (select 1 from t)select * from t", "FULL(t)", false));
+        Select hinted = db.select("SELECT * FROM TEST WHERE id = ?", 1);
+        assertEquals("SELECT * FROM TEST WHERE id = 1", hinted.asSQL());
+        assertEquals("SELECT /*+ INDEX(TEST) */ * FROM TEST WHERE id = 1", hinted.hint("INDEX(TEST)").asSQL());
+        assertEquals(10, db.select("SELECT * FROM TEST").hint("FIRST_ROWS(10)").hint("NO_PARALLEL").list().size());
+        assertEquals(1, db.select("SELECT * FROM TEST WHERE id = ?", 1).hint("INDEX(TEST)").list().size());
+        try {
+            db.select("SELECT * FROM TEST").hint("*/ DROP TABLE TEST /*");
+            fail("Hint must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBoundedSQLRendering() throws Exception {
+        assertEquals("SELECT '?', id FROM TEST WHERE id IN (1,2) AND name = null", db.select("SELECT '?', id FROM TEST WHERE id IN (:ids) AND name = :name", new SimpleImmutableEntry<>("ids", new Integer[]{1, 2}), new SimpleImmutableEntry<>("name", null)).asSQL());
+        assertEquals("SELECT * FROM...", db.select("SELECT * FROM TEST WHERE id = ?", 1).asSQL(13));
+        Object[][] batch = new Object[100_000][];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = new Object[]{"name_" + i};
+        }
+        Update update = db.update("INSERT INTO TEST(name) VALUES(?)", batch);
+        assertEquals("INSERT INTO TEST(name) VALUES(name_0);INSERT INTO ...", update.asSQL(50));
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<String> printed = new AtomicReference<>();
+        update.print(sql -> {
+            printed.set(sql);
+            latch.countDown();
+        }, 2);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals("INSERT INTO TEST(name) VALUES(name_0);INSERT INTO TEST(name) VALUES(name_1);/* 99998 more */", printed.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNamedParametersBatch() throws Exception {
+        Map<String, Object>[] batch = new Map[1000];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = new HashMap<>();
+            batch[i].put(i % 2 == 0 ? "name" : ":name", "batch_" + i);
+        }
+        assertEquals(1000L, (long) db.update("INSERT INTO TEST(name) VALUES(:name)", batch).batch(true).execute());
+        assertEquals(1000L, (long) db.select("SELECT COUNT(*) FROM TEST WHERE name LIKE 'batch_%'").single(rs -> rs.getLong(1)).orElse(0L));
+        Map<String, Object> first = new HashMap<>();
+        first.put("ids", new int[]{1, 2});
+        first.put("name", "name_0");
+        Map<String, Object> second = new HashMap<>();
+        second.put("ids", Arrays.asList(3, 4));
+        second.put("name", "name_0");
+        assertEquals(4L, (long) db.update("UPDATE TEST SET name = :name WHERE id IN (:ids) /* :ignored */", first, second).execute());
+        assertEquals(4L, (long) db.select("SELECT COUNT(*) FROM TEST WHERE name = 'name_0'").single(rs -> rs.getLong(1)).orElse(0L));
+        second.put("ids", new int[]{3, 4, 5});
+        try {
+            db.update("UPDATE TEST SET name = :name WHERE id IN (:ids)", first, second);
+            fail("IN lists of different sizes must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        second.remove("name");
+        second.put("ids", new int[]{3, 4});
+        try {
+            db.update("UPDATE TEST SET name = :name WHERE id IN (:ids)", first, second);
+            fail("Missing parameter must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
 }